@@ -0,0 +1,45 @@
+package ir.university.library.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs the benchmarks once per thread count and writes one JSON result file per run.
+ * <p>
+ * Usage: java -jar benchmarks.jar [threads] [output directory] [include regex]
+ * <br>
+ * e.g. java -jar benchmarks.jar 1,4,8 results/3.0.0 "BookSearch.*"
+ */
+public class BenchmarkRunner {
+    private static final String DEFAULT_THREADS = "1,2,4,8";
+    private static final String DEFAULT_OUTPUT = "benchmark-results";
+    private static final String DEFAULT_INCLUDE = "ir\\.university\\.library\\.benchmarks\\..*";
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        String threadList = args.length > 0 ? args[0] : DEFAULT_THREADS;
+        Path output = Paths.get(args.length > 1 ? args[1] : DEFAULT_OUTPUT);
+        String include = args.length > 2 ? args[2] : DEFAULT_INCLUDE;
+        Files.createDirectories(output);
+
+        for (String value : threadList.split(",")) {
+            int threads = Integer.parseInt(value.trim());
+            Path result = output.resolve("jmh-threads-" + threads + ".json");
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(result.toString())
+                    .build();
+            new Runner(options).run();
+            System.out.println("Results for " + threads + " thread(s) written to " + result);
+        }
+    }
+}
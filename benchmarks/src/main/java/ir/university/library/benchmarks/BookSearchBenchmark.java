@@ -0,0 +1,92 @@
+package ir.university.library.benchmarks;
+
+import ir.university.library.model.Book;
+import ir.university.library.repository.BookRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BookRepository.search by title, author and year, with and without the
+ * search cache, and the typo-tolerant fuzzySearch, over catalogues of
+ * different sizes
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookSearchBenchmark {
+    @Param({"1000", "10000", "100000"})
+    int catalogueSize;
+
+    private BookRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LibraryFixture.clear();
+        LibraryFixture.createUsers(0);
+        LibraryFixture.createBooks(catalogueSize, 42);
+        repository = BookRepository.getInstance();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        LibraryFixture.clear();
+    }
+
+    // Uncached: every call retires the search cache first, so it queries the indexes
+
+    @Benchmark
+    public List<Book> searchTitleSubstring() {
+        repository.invalidateSearchCache();
+        return repository.search("gorith", null, null);
+    }
+
+    @Benchmark
+    public List<Book> searchShortTitle() {
+        repository.invalidateSearchCache();
+        return repository.search("da", null, null);
+    }
+
+    @Benchmark
+    public List<Book> searchTitleAndAuthor() {
+        repository.invalidateSearchCache();
+        return repository.search("java", null, "martin");
+    }
+
+    @Benchmark
+    public List<Book> searchYear() {
+        repository.invalidateSearchCache();
+        return repository.search(null, 1990, null);
+    }
+
+    // Cached: the same queries repeated against an unchanged catalogue hit the cache
+
+    @Benchmark
+    public List<Book> searchTitleSubstringCached() {
+        return repository.search("gorith", null, null);
+    }
+
+    @Benchmark
+    public List<Book> searchShortTitleCached() {
+        return repository.search("da", null, null);
+    }
+
+    @Benchmark
+    public List<Book> searchTitleAndAuthorCached() {
+        return repository.search("java", null, "martin");
+    }
+
+    @Benchmark
+    public List<Book> searchYearCached() {
+        return repository.search(null, 1990, null);
+    }
+
+    @Benchmark
+    public List<Book> fuzzyTitleAndAuthor() {
+        return repository.fuzzySearch("algoritms knth");
+    }
+}
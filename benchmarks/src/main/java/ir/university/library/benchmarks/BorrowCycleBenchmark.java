@@ -0,0 +1,85 @@
+package ir.university.library.benchmarks;
+
+import ir.university.library.model.BorrowRecord;
+import ir.university.library.model.BorrowRequest;
+import ir.university.library.service.BorrowService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A full BorrowService cycle (request, approval, return) against a populated
+ * library. The three calls are measured together so the library stays in a
+ * steady state; every benchmark thread works on its own book and student so
+ * the operations never fail on availability. Each cycle adds a request and a
+ * returned record, so the library is rebuilt before every iteration to keep
+ * the history at recordCount records instead of growing across iterations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BorrowCycleBenchmark {
+    private static final int STUDENTS = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Library {
+        @Param({"1000", "100000"})
+        int catalogueSize;
+
+        @Param({"10000", "100000"})
+        int recordCount;
+
+        List<String> bookIds;
+        final AtomicInteger nextThread = new AtomicInteger();
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            LibraryFixture.clear();
+            LibraryFixture.createUsers(STUDENTS);
+            bookIds = LibraryFixture.createBooks(catalogueSize, 42);
+            LibraryFixture.createHistory(recordCount, STUDENTS, bookIds, 7);
+            nextThread.set(0);
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            LibraryFixture.clear();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Borrower {
+        String studentUsername;
+        String bookId;
+        BorrowService service;
+
+        // Book IDs are new after each rebuild of the library
+        @Setup(Level.Iteration)
+        public void setUp(Library library) {
+            int index = library.nextThread.getAndIncrement();
+            studentUsername = LibraryFixture.studentName(index % STUDENTS);
+            bookId = library.bookIds.get(index % library.bookIds.size());
+            service = new BorrowService();
+        }
+    }
+
+    @Benchmark
+    public boolean createApproveReturn(Library library, Borrower borrower) {
+        LocalDate today = LocalDate.now();
+        BorrowRequest request = borrower.service.createBorrowRequest(borrower.studentUsername,
+                borrower.bookId, today, today.plusDays(7));
+        borrower.service.approveRequest(request.getRequestId(), LibraryFixture.STAFF);
+        // Only the benchmark threads hold active loans, so this list stays short
+        for (BorrowRecord record : borrower.service.getActiveBorrows()) {
+            if (record.getBookId().equals(borrower.bookId)) {
+                return borrower.service.returnBook(record.getRecordId(), LibraryFixture.STAFF);
+            }
+        }
+        throw new IllegalStateException("Approved loan not found for book " + borrower.bookId);
+    }
+}
@@ -0,0 +1,91 @@
+package ir.university.library.benchmarks;
+
+import ir.university.library.model.*;
+import ir.university.library.repository.BookRepository;
+import ir.university.library.repository.BorrowRepository;
+import ir.university.library.repository.UserRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fills the repositories with a reproducible catalogue and borrow history
+ */
+final class LibraryFixture {
+    static final String STAFF = "bench-staff";
+
+    private static final String[] TITLE_WORDS = {
+        "Java", "Programming", "Data", "Structures", "Algorithms", "Database", "Systems",
+        "Networks", "Operating", "Design", "Patterns", "Clean", "Code", "Distributed",
+        "Computing", "Compilers", "Security", "Machine", "Learning", "Graphics"
+    };
+    private static final String[] AUTHORS = {
+        "John Doe", "Jane Smith", "Robert Martin", "Martin Fowler", "Donald Knuth",
+        "Andrew Tanenbaum", "Niklaus Wirth", "Barbara Liskov", "Edsger Dijkstra", "Grace Hopper"
+    };
+
+    private LibraryFixture() {
+    }
+
+    static void clear() {
+        UserRepository.getInstance().clear();
+        BookRepository.getInstance().clear();
+        BorrowRepository.getInstance().clear();
+    }
+
+    static String studentName(int index) {
+        return "bench-student" + index;
+    }
+
+    /**
+     * Register the staff member and the given number of students
+     */
+    static void createUsers(int students) {
+        UserRepository users = UserRepository.getInstance();
+        users.save(new Staff(STAFF, "pass", "ST-BENCH", "Benchmark Staff"));
+        for (int i = 0; i < students; i++) {
+            users.save(new Student(studentName(i), "pass", "S" + i, "Student " + i, "s" + i + "@bench"));
+        }
+    }
+
+    /**
+     * Register the given number of books with titles built from a small vocabulary
+     */
+    static List<String> createBooks(int count, long seed) {
+        Random random = new Random(seed);
+        BookRepository books = BookRepository.getInstance();
+        List<String> bookIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String title = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " "
+                    + TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " " + i;
+            Book book = new Book(title, AUTHORS[random.nextInt(AUTHORS.length)],
+                    1950 + random.nextInt(75), "ISBN-BENCH-" + i, STAFF);
+            books.save(book);
+            bookIds.add(book.getBookId());
+        }
+        return bookIds;
+    }
+
+    /**
+     * Save returned borrow records spread over the students and books,
+     * roughly a quarter of them returned late
+     */
+    static void createHistory(int records, int students, List<String> bookIds, long seed) {
+        Random random = new Random(seed);
+        BorrowRepository borrows = BorrowRepository.getInstance();
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < records; i++) {
+            LocalDate start = today.minusDays(30 + random.nextInt(700));
+            LocalDate expected = start.plusDays(14);
+            long delay = random.nextInt(4) == 0 ? 1 + random.nextInt(20) : -random.nextInt(10);
+            BorrowRecord record = new BorrowRecord("history-" + i, studentName(random.nextInt(students)),
+                    bookIds.get(random.nextInt(bookIds.size())), start, expected, STAFF);
+            record.setReturned(true);
+            record.setReceivedBy(STAFF);
+            record.setActualReturnDate(expected.plusDays(delay).atTime(12, 0));
+            borrows.saveRecord(record);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ir.university.library.benchmarks;
+
+import ir.university.library.service.ReportService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReportService borrow statistics and delay ranking over borrow histories of different sizes,
+ * read from the running totals and recomputed from the history in parallel
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+    private static final int STUDENTS = 5000;
+
+    @Param({"1000", "100000"})
+    int catalogueSize;
+
+    @Param({"10000", "100000", "1000000"})
+    int recordCount;
+
+    private ReportService reportService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LibraryFixture.clear();
+        LibraryFixture.createUsers(STUDENTS);
+        LibraryFixture.createHistory(recordCount, STUDENTS,
+                LibraryFixture.createBooks(catalogueSize, 42), 7);
+        reportService = new ReportService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        LibraryFixture.clear();
+    }
+
+    @Benchmark
+    public ReportService.BorrowStats borrowStats() {
+        return reportService.getBorrowStats();
+    }
+
+    @Benchmark
+    public List<ReportService.StudentDelayInfo> top10StudentsWithMostDelays() {
+        return reportService.getTop10StudentsWithMostDelays();
+    }
+
+    @Benchmark
+    public ReportService.LateReturnStats lateReturnStats() {
+        return reportService.getLateReturnStats();
+    }
+
+    @Benchmark
+    public List<ReportService.StudentDelayInfo> computeTop10StudentsWithMostDelays() {
+        return reportService.computeTopStudentsWithMostDelays(10);
+    }
+}
@@ -1,13 +1,33 @@
 package ir.university.library;
 
+import ir.university.library.persistence.PersistenceManager;
 import ir.university.library.ui.MenuHandler;
+import ir.university.library.util.Ids;
+import ir.university.library.util.SnowflakeIdGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Main entry point for Library Management System
  */
 public class Main {
     public static void main(String[] args) {
-        MenuHandler menuHandler = new MenuHandler();
-        menuHandler.start();
+        Path dataDirectory = Paths.get(System.getProperty("library.data.dir", "library-data"));
+        // Instances sharing data need distinct node IDs so their IDs never collide
+        String nodeId = System.getProperty("library.node.id");
+        if (nodeId != null) {
+            Ids.setGenerator(new SnowflakeIdGenerator(Integer.parseInt(nodeId)));
+        }
+
+        try (PersistenceManager persistence = PersistenceManager.open(dataDirectory)) {
+            MenuHandler menuHandler = new MenuHandler();
+            menuHandler.start();
+            // Compact the log on a clean exit so the next start replays less
+            persistence.snapshot();
+        } catch (IOException e) {
+            System.err.println("Failed to open library data in " + dataDirectory + ": " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,33 +1,71 @@
 package ir.university.library.model;
 
+import ir.university.library.util.Ids;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.LocalDateTime;
 import java.util.Objects;
-import java.util.UUID;
 
 /**
- * Book entity in the library system
+ * Book entity in the library system.
+ * Availability carries a version that grows with every change, and can be
+ * flipped with compare-and-set so concurrent loans of one copy cannot both win.
  */
 public class Book {
+    private static final VarHandle STATE;
+
+    /**
+     * Told when a book becomes available or unavailable, after the change
+     */
+    public interface AvailabilityListener {
+        void availabilityChanged(Book book);
+    }
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Book.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private String bookId;
     private String title;
     private String author;
     private int publicationYear;
     private String isbn;
-    private boolean available;
+    private volatile long state; // version << 1 | available
     private LocalDateTime registeredAt;
     private String registeredBy; // Staff username
+    private volatile AvailabilityListener availabilityListener;
 
     public Book(String title, String author, int publicationYear, String isbn, String registeredBy) {
-        this.bookId = UUID.randomUUID().toString().substring(0, 8);
+        this.bookId = Ids.next();
         this.title = title;
         this.author = author;
         this.publicationYear = publicationYear;
         this.isbn = isbn;
-        this.available = true;
+        this.state = 1;
         this.registeredAt = LocalDateTime.now();
         this.registeredBy = registeredBy;
     }
 
+    /**
+     * Restore a book with its original ID and state (used when loading saved data)
+     */
+    public Book(String bookId, String title, String author, int publicationYear, String isbn,
+                boolean available, LocalDateTime registeredAt, String registeredBy) {
+        this.bookId = bookId;
+        this.title = title;
+        this.author = author;
+        this.publicationYear = publicationYear;
+        this.isbn = isbn;
+        this.state = available ? 1 : 0;
+        this.registeredAt = registeredAt;
+        this.registeredBy = registeredBy;
+    }
+
     // Getters and Setters
     public String getBookId() {
         return bookId;
@@ -66,11 +104,60 @@ public class Book {
     }
 
     public boolean isAvailable() {
-        return available;
+        return (state & 1) != 0;
     }
 
     public void setAvailable(boolean available) {
-        this.available = available;
+        long current;
+        do {
+            current = state;
+        } while (!STATE.compareAndSet(this, current, next(current, available)));
+        if (((current & 1) != 0) != available) {
+            notifyAvailabilityChanged();
+        }
+    }
+
+    /**
+     * Number of availability changes so far
+     */
+    public long getVersion() {
+        return state >>> 1;
+    }
+
+    /**
+     * Set availability only if it currently has the expected value.
+     * Returns false without retrying when another thread got there first.
+     */
+    public boolean compareAndSetAvailable(boolean expected, boolean available) {
+        long current;
+        do {
+            current = state;
+            if (((current & 1) != 0) != expected) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, current, next(current, available)));
+        if (expected != available) {
+            notifyAvailabilityChanged();
+        }
+        return true;
+    }
+
+    private void notifyAvailabilityChanged() {
+        AvailabilityListener listener = availabilityListener;
+        if (listener != null) {
+            listener.availabilityChanged(this);
+        }
+    }
+
+    /**
+     * Set by the repository holding this book to keep its indexes current
+     */
+    public void setAvailabilityListener(AvailabilityListener availabilityListener) {
+        this.availabilityListener = availabilityListener;
+    }
+
+    private static long next(long current, boolean available) {
+        return (((current >>> 1) + 1) << 1) | (available ? 1 : 0);
     }
 
     public LocalDateTime getRegisteredAt() {
@@ -102,7 +189,7 @@ public class Book {
                 ", author='" + author + '\'' +
                 ", year=" + publicationYear +
                 ", isbn='" + isbn + '\'' +
-                ", available=" + available +
+                ", available=" + isAvailable() +
                 '}';
     }
 }
\ No newline at end of file
@@ -1,36 +1,81 @@
 package ir.university.library.model;
 
+import ir.university.library.util.Ids;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Objects;
-import java.util.UUID;
 
 /**
  * Represents an actual borrow record (approved and book handed out)
  */
 public class BorrowRecord {
+    private static final VarHandle RETURN_STATE;
+
+    static {
+        try {
+            RETURN_STATE = MethodHandles.lookup().findVarHandle(BorrowRecord.class, "returnState", ReturnState.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private String recordId;
     private String requestId;
     private String studentUsername;
     private String bookId;
     private LocalDate startDate;
     private LocalDate expectedReturnDate;
-    private LocalDateTime actualReturnDate;
     private String lentBy; // Staff who gave the book
-    private String receivedBy; // Staff who received the book back
-    private boolean returned;
+    private volatile ReturnState returnState;
+
+    /**
+     * Whether the book is back, who received it and when, swapped as one
+     * object so no thread sees a returned record without its return date
+     */
+    private static final class ReturnState {
+        static final ReturnState OUT = new ReturnState(false, null, null);
+
+        final boolean returned;
+        final String receivedBy; // Staff who received the book back
+        final LocalDateTime actualReturnDate;
+
+        ReturnState(boolean returned, String receivedBy, LocalDateTime actualReturnDate) {
+            this.returned = returned;
+            this.receivedBy = receivedBy;
+            this.actualReturnDate = actualReturnDate;
+        }
+    }
 
     public BorrowRecord(String requestId, String studentUsername, String bookId,
                         LocalDate startDate, LocalDate expectedReturnDate, String lentBy) {
-        this.recordId = UUID.randomUUID().toString().substring(0, 8);
+        this.recordId = Ids.next();
         this.requestId = requestId;
         this.studentUsername = studentUsername;
         this.bookId = bookId;
         this.startDate = startDate;
         this.expectedReturnDate = expectedReturnDate;
         this.lentBy = lentBy;
-        this.returned = false;
+        this.returnState = ReturnState.OUT;
+    }
+
+    /**
+     * Restore a record with its original ID and state (used when loading saved data)
+     */
+    public BorrowRecord(String recordId, String requestId, String studentUsername, String bookId,
+                        LocalDate startDate, LocalDate expectedReturnDate, LocalDateTime actualReturnDate,
+                        String lentBy, String receivedBy, boolean returned) {
+        this.recordId = recordId;
+        this.requestId = requestId;
+        this.studentUsername = studentUsername;
+        this.bookId = bookId;
+        this.startDate = startDate;
+        this.expectedReturnDate = expectedReturnDate;
+        this.lentBy = lentBy;
+        this.returnState = new ReturnState(returned, receivedBy, actualReturnDate);
     }
 
     // Getters and Setters
@@ -59,11 +104,12 @@ public class BorrowRecord {
     }
 
     public LocalDateTime getActualReturnDate() {
-        return actualReturnDate;
+        return returnState.actualReturnDate;
     }
 
     public void setActualReturnDate(LocalDateTime actualReturnDate) {
-        this.actualReturnDate = actualReturnDate;
+        ReturnState current = returnState;
+        this.returnState = new ReturnState(current.returned, current.receivedBy, actualReturnDate);
     }
 
     public String getLentBy() {
@@ -71,52 +117,72 @@ public class BorrowRecord {
     }
 
     public String getReceivedBy() {
-        return receivedBy;
+        return returnState.receivedBy;
     }
 
     public void setReceivedBy(String receivedBy) {
-        this.receivedBy = receivedBy;
+        ReturnState current = returnState;
+        this.returnState = new ReturnState(current.returned, receivedBy, current.actualReturnDate);
     }
 
     public boolean isReturned() {
-        return returned;
+        return returnState.returned;
     }
 
     public void setReturned(boolean returned) {
-        this.returned = returned;
+        ReturnState current = returnState;
+        this.returnState = new ReturnState(returned, current.receivedBy, current.actualReturnDate);
+    }
+
+    /**
+     * Mark the record returned unless another thread already did. The flag,
+     * the receiver and the date become visible together.
+     */
+    public boolean markReturned(String receivedBy, LocalDateTime actualReturnDate) {
+        ReturnState returned = new ReturnState(true, receivedBy, actualReturnDate);
+        ReturnState current;
+        do {
+            current = returnState;
+            if (current.returned) {
+                return false;
+            }
+        } while (!RETURN_STATE.compareAndSet(this, current, returned));
+        return true;
+    }
+
+    /**
+     * Return date of a returned record, or null if it is not back (or undated)
+     */
+    private LocalDate returnedOn() {
+        ReturnState state = returnState;
+        return state.returned && state.actualReturnDate != null ? state.actualReturnDate.toLocalDate() : null;
     }
 
     /**
      * Check if the book was returned late
      */
     public boolean isReturnedLate() {
-        if (!returned || actualReturnDate == null) {
-            return false;
-        }
-        LocalDate actualReturnLocalDate = actualReturnDate.toLocalDate();
-        return actualReturnLocalDate.isAfter(expectedReturnDate);
+        LocalDate returnedOn = returnedOn();
+        return returnedOn != null && returnedOn.isAfter(expectedReturnDate);
     }
 
     /**
      * Get delay in days (0 if not late)
      */
     public long getDelayDays() {
-        if (!isReturnedLate()) {
+        LocalDate returnedOn = returnedOn();
+        if (returnedOn == null || !returnedOn.isAfter(expectedReturnDate)) {
             return 0;
         }
-        LocalDate actualReturnLocalDate = actualReturnDate.toLocalDate();
-        return ChronoUnit.DAYS.between(expectedReturnDate, actualReturnLocalDate);
+        return ChronoUnit.DAYS.between(expectedReturnDate, returnedOn);
     }
 
     /**
      * Get total borrow duration in days
      */
     public long getBorrowDuration() {
-        if (!returned || actualReturnDate == null) {
-            return 0;
-        }
-        LocalDate actualReturnLocalDate = actualReturnDate.toLocalDate();
-        return ChronoUnit.DAYS.between(startDate, actualReturnLocalDate);
+        LocalDate returnedOn = returnedOn();
+        return returnedOn == null ? 0 : ChronoUnit.DAYS.between(startDate, returnedOn);
     }
 
     @Override
@@ -140,7 +206,7 @@ public class BorrowRecord {
                 ", bookId='" + bookId + '\'' +
                 ", startDate=" + startDate +
                 ", expectedReturn=" + expectedReturnDate +
-                ", returned=" + returned +
+                ", returned=" + returnState.returned +
                 '}';
     }
 }
\ No newline at end of file
@@ -1,12 +1,17 @@
 package ir.university.library.model;
 
+import ir.university.library.util.Ids;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Objects;
-import java.util.UUID;
 
 /**
- * Represents a borrow request made by a student
+ * Represents a borrow request made by a student.
+ * The status carries a version that grows with every change; the try
+ * methods move it with compare-and-set so only one reviewer can decide it.
  */
 public class BorrowRequest {
     public enum Status {
@@ -15,26 +20,54 @@ public class BorrowRequest {
         REJECTED
     }
 
+    private static final Status[] STATUSES = Status.values();
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(BorrowRequest.class, "state", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private String requestId;
     private String studentUsername;
     private String bookId;
     private LocalDate startDate;
     private LocalDate endDate;
-    private Status status;
+    private volatile long state; // version << 2 | status ordinal
     private LocalDateTime requestedAt;
     private String approvedBy; // Staff username
     private LocalDateTime approvedAt;
 
     public BorrowRequest(String studentUsername, String bookId, LocalDate startDate, LocalDate endDate) {
-        this.requestId = UUID.randomUUID().toString().substring(0, 8);
+        this.requestId = Ids.next();
         this.studentUsername = studentUsername;
         this.bookId = bookId;
         this.startDate = startDate;
         this.endDate = endDate;
-        this.status = Status.PENDING;
+        this.state = Status.PENDING.ordinal();
         this.requestedAt = LocalDateTime.now();
     }
 
+    /**
+     * Restore a request with its original ID and state (used when loading saved data)
+     */
+    public BorrowRequest(String requestId, String studentUsername, String bookId,
+                         LocalDate startDate, LocalDate endDate, Status status,
+                         LocalDateTime requestedAt, String approvedBy, LocalDateTime approvedAt) {
+        this.requestId = requestId;
+        this.studentUsername = studentUsername;
+        this.bookId = bookId;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.state = status.ordinal();
+        this.requestedAt = requestedAt;
+        this.approvedBy = approvedBy;
+        this.approvedAt = approvedAt;
+    }
+
     // Getters and Setters
     public String getRequestId() {
         return requestId;
@@ -57,11 +90,40 @@ public class BorrowRequest {
     }
 
     public Status getStatus() {
-        return status;
+        return STATUSES[(int) (state & 3)];
     }
 
     public void setStatus(Status status) {
-        this.status = status;
+        long current;
+        do {
+            current = state;
+        } while (!STATE.compareAndSet(this, current, next(current, status)));
+    }
+
+    /**
+     * Number of status changes so far
+     */
+    public long getVersion() {
+        return state >>> 2;
+    }
+
+    /**
+     * Move the status only if it currently has the expected value.
+     * Returns false without retrying when another thread got there first.
+     */
+    public boolean compareAndSetStatus(Status expected, Status status) {
+        long current;
+        do {
+            current = state;
+            if ((current & 3) != expected.ordinal()) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, current, next(current, status)));
+        return true;
+    }
+
+    private static long next(long current, Status status) {
+        return (((current >>> 2) + 1) << 2) | status.ordinal();
     }
 
     public LocalDateTime getRequestedAt() {
@@ -85,17 +147,41 @@ public class BorrowRequest {
     }
 
     public void approve(String staffUsername) {
-        this.status = Status.APPROVED;
+        setStatus(Status.APPROVED);
         this.approvedBy = staffUsername;
         this.approvedAt = LocalDateTime.now();
     }
 
     public void reject(String staffUsername) {
-        this.status = Status.REJECTED;
+        setStatus(Status.REJECTED);
         this.approvedBy = staffUsername;
         this.approvedAt = LocalDateTime.now();
     }
 
+    /**
+     * Approve the request if it is still pending
+     */
+    public boolean tryApprove(String staffUsername) {
+        if (!compareAndSetStatus(Status.PENDING, Status.APPROVED)) {
+            return false;
+        }
+        this.approvedBy = staffUsername;
+        this.approvedAt = LocalDateTime.now();
+        return true;
+    }
+
+    /**
+     * Undo an approval that could not be completed, making the request pending again
+     */
+    public boolean revertApproval() {
+        if (!compareAndSetStatus(Status.APPROVED, Status.PENDING)) {
+            return false;
+        }
+        this.approvedBy = null;
+        this.approvedAt = null;
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -117,7 +203,7 @@ public class BorrowRequest {
                 ", bookId='" + bookId + '\'' +
                 ", startDate=" + startDate +
                 ", endDate=" + endDate +
-                ", status=" + status +
+                ", status=" + getStatus() +
                 '}';
     }
 }
\ No newline at end of file
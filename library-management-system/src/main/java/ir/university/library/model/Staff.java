@@ -1,29 +1,34 @@
 package ir.university.library.model;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * Library staff member
+ * Library staff member.
+ * The activity counters mirror the staff activity index kept by the
+ * repositories, which is authoritative; they are overwritten from it rather
+ * than counted here.
  */
 public class Staff extends User {
     private String staffId;
     private String fullName;
-    private int booksRegistered;
-    private int booksLent;
-    private int booksReceived;
+    private final AtomicInteger booksRegistered;
+    private final AtomicInteger booksLent;
+    private final AtomicInteger booksReceived;
 
     public Staff(String username, String password) {
         super(username, password);
-        this.booksRegistered = 0;
-        this.booksLent = 0;
-        this.booksReceived = 0;
+        this.booksRegistered = new AtomicInteger();
+        this.booksLent = new AtomicInteger();
+        this.booksReceived = new AtomicInteger();
     }
 
     public Staff(String username, String password, String staffId, String fullName) {
         super(username, password);
         this.staffId = staffId;
         this.fullName = fullName;
-        this.booksRegistered = 0;
-        this.booksLent = 0;
-        this.booksReceived = 0;
+        this.booksRegistered = new AtomicInteger();
+        this.booksLent = new AtomicInteger();
+        this.booksReceived = new AtomicInteger();
     }
 
     public String getStaffId() {
@@ -43,27 +48,27 @@ public class Staff extends User {
     }
 
     public int getBooksRegistered() {
-        return booksRegistered;
+        return booksRegistered.get();
     }
 
-    public void incrementBooksRegistered() {
-        this.booksRegistered++;
+    public void setBooksRegistered(int booksRegistered) {
+        this.booksRegistered.set(booksRegistered);
     }
 
     public int getBooksLent() {
-        return booksLent;
+        return booksLent.get();
     }
 
-    public void incrementBooksLent() {
-        this.booksLent++;
+    public void setBooksLent(int booksLent) {
+        this.booksLent.set(booksLent);
     }
 
     public int getBooksReceived() {
-        return booksReceived;
+        return booksReceived.get();
     }
 
-    public void incrementBooksReceived() {
-        this.booksReceived++;
+    public void setBooksReceived(int booksReceived) {
+        this.booksReceived.set(booksReceived);
     }
 
     @Override
@@ -1,5 +1,7 @@
 package ir.university.library.model;
 
+import ir.university.library.util.PasswordHasher;
+
 import java.time.LocalDateTime;
 import java.util.Objects;
 
@@ -7,10 +9,22 @@ import java.util.Objects;
  * Abstract base class for all user types in the library system
  */
 public abstract class User {
+
+    /**
+     * Told when a user is activated or deactivated, after the change
+     */
+    public interface ActiveListener {
+        void activeChanged(User user);
+    }
+
     private String username;
+    // Plaintext until the first hash is needed, then only the salted hash is kept
     private String password;
+    private String passwordHash;
+    private final Object passwordLock = new Object();
     private LocalDateTime createdAt;
     private boolean active;
+    private volatile ActiveListener activeListener;
 
     public User(String username, String password) {
         this.username = username;
@@ -27,24 +41,80 @@ public abstract class User {
         this.username = username;
     }
 
-    public String getPassword() {
-        return password;
+    /**
+     * Check a password; a user restored from disk has only the hash to check against
+     */
+    public boolean checkPassword(String candidate) {
+        synchronized (passwordLock) {
+            if (passwordHash == null) {
+                return password != null && password.equals(candidate);
+            }
+            return PasswordHasher.matches(candidate, passwordHash);
+        }
     }
 
     public void setPassword(String password) {
-        this.password = password;
+        synchronized (passwordLock) {
+            this.password = password;
+            this.passwordHash = null;
+        }
+    }
+
+    /**
+     * Salted hash of the password, computed once on first use; the
+     * plaintext is dropped then, so only the hash is ever persisted
+     */
+    public String getPasswordHash() {
+        synchronized (passwordLock) {
+            if (passwordHash == null && password != null) {
+                passwordHash = PasswordHasher.hash(password);
+                password = null;
+            }
+            return passwordHash;
+        }
+    }
+
+    /**
+     * Restore a hash made by getPasswordHash
+     */
+    public void setPasswordHash(String passwordHash) {
+        synchronized (passwordLock) {
+            this.password = null;
+            this.passwordHash = passwordHash;
+        }
     }
 
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
 
-    public boolean isActive() {
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public synchronized boolean isActive() {
         return active;
     }
 
     public void setActive(boolean active) {
-        this.active = active;
+        synchronized (this) {
+            if (this.active == active) {
+                return;
+            }
+            this.active = active;
+        }
+        // Called outside the monitor so the listener may take its own locks
+        ActiveListener listener = activeListener;
+        if (listener != null) {
+            listener.activeChanged(this);
+        }
+    }
+
+    /**
+     * Set by the repository holding this user to keep its counters exact
+     */
+    public void setActiveListener(ActiveListener activeListener) {
+        this.activeListener = activeListener;
     }
 
     public abstract String getUserType();
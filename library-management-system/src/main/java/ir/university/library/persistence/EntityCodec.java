@@ -0,0 +1,171 @@
+package ir.university.library.persistence;
+
+import ir.university.library.model.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Binary encoding of the library entities, shared by the log and snapshots
+ */
+final class EntityCodec {
+    private static final byte STUDENT = 1;
+    private static final byte STAFF = 2;
+    private static final byte MANAGER = 3;
+
+    private EntityCodec() {
+    }
+
+    static void writeBook(DataOutput out, Book book) throws IOException {
+        writeString(out, book.getBookId());
+        writeString(out, book.getTitle());
+        writeString(out, book.getAuthor());
+        out.writeInt(book.getPublicationYear());
+        writeString(out, book.getIsbn());
+        out.writeBoolean(book.isAvailable());
+        writeDateTime(out, book.getRegisteredAt());
+        writeString(out, book.getRegisteredBy());
+    }
+
+    static Book readBook(DataInput in) throws IOException {
+        return new Book(readString(in), readString(in), readString(in), in.readInt(), readString(in),
+                in.readBoolean(), readDateTime(in), readString(in));
+    }
+
+    static void writeUser(DataOutput out, User user) throws IOException {
+        if (user instanceof Student) {
+            Student student = (Student) user;
+            out.writeByte(STUDENT);
+            writeUserBase(out, user);
+            writeString(out, student.getStudentId());
+            writeString(out, student.getFullName());
+            writeString(out, student.getEmail());
+        } else if (user instanceof Staff) {
+            Staff staff = (Staff) user;
+            out.writeByte(STAFF);
+            writeUserBase(out, user);
+            writeString(out, staff.getStaffId());
+            writeString(out, staff.getFullName());
+            out.writeInt(staff.getBooksRegistered());
+            out.writeInt(staff.getBooksLent());
+            out.writeInt(staff.getBooksReceived());
+        } else if (user instanceof Manager) {
+            out.writeByte(MANAGER);
+            writeUserBase(out, user);
+            writeString(out, ((Manager) user).getFullName());
+        } else {
+            throw new IllegalArgumentException("Unsupported user type: " + user.getUserType());
+        }
+    }
+
+    private static void writeUserBase(DataOutput out, User user) throws IOException {
+        writeString(out, user.getUsername());
+        writeString(out, user.getPasswordHash());
+        writeDateTime(out, user.getCreatedAt());
+        out.writeBoolean(user.isActive());
+    }
+
+    static User readUser(DataInput in) throws IOException {
+        byte type = in.readByte();
+        String username = readString(in);
+        String passwordHash = readString(in);
+        LocalDateTime createdAt = readDateTime(in);
+        boolean active = in.readBoolean();
+
+        User user;
+        switch (type) {
+            case STUDENT:
+                user = new Student(username, null, readString(in), readString(in), readString(in));
+                break;
+            case STAFF:
+                Staff staff = new Staff(username, null, readString(in), readString(in));
+                staff.setBooksRegistered(in.readInt());
+                staff.setBooksLent(in.readInt());
+                staff.setBooksReceived(in.readInt());
+                user = staff;
+                break;
+            case MANAGER:
+                user = new Manager(username, null, readString(in));
+                break;
+            default:
+                throw new IOException("Unknown user type: " + type);
+        }
+        user.setPasswordHash(passwordHash);
+        user.setCreatedAt(createdAt);
+        user.setActive(active);
+        return user;
+    }
+
+    static void writeRequest(DataOutput out, BorrowRequest request) throws IOException {
+        writeString(out, request.getRequestId());
+        writeString(out, request.getStudentUsername());
+        writeString(out, request.getBookId());
+        writeDate(out, request.getStartDate());
+        writeDate(out, request.getEndDate());
+        out.writeByte(request.getStatus().ordinal());
+        writeDateTime(out, request.getRequestedAt());
+        writeString(out, request.getApprovedBy());
+        writeDateTime(out, request.getApprovedAt());
+    }
+
+    static BorrowRequest readRequest(DataInput in) throws IOException {
+        return new BorrowRequest(readString(in), readString(in), readString(in), readDate(in), readDate(in),
+                BorrowRequest.Status.values()[in.readByte()], readDateTime(in), readString(in), readDateTime(in));
+    }
+
+    static void writeRecord(DataOutput out, BorrowRecord record) throws IOException {
+        writeString(out, record.getRecordId());
+        writeString(out, record.getRequestId());
+        writeString(out, record.getStudentUsername());
+        writeString(out, record.getBookId());
+        writeDate(out, record.getStartDate());
+        writeDate(out, record.getExpectedReturnDate());
+        writeDateTime(out, record.getActualReturnDate());
+        writeString(out, record.getLentBy());
+        writeString(out, record.getReceivedBy());
+        out.writeBoolean(record.isReturned());
+    }
+
+    static BorrowRecord readRecord(DataInput in) throws IOException {
+        return new BorrowRecord(readString(in), readString(in), readString(in), readString(in), readDate(in),
+                readDate(in), readDateTime(in), readString(in), readString(in), in.readBoolean());
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.toEpochDay());
+        }
+    }
+
+    private static LocalDate readDate(DataInput in) throws IOException {
+        return in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+    }
+
+    private static void writeDateTime(DataOutput out, LocalDateTime dateTime) throws IOException {
+        out.writeBoolean(dateTime != null);
+        if (dateTime != null) {
+            out.writeLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(dateTime.getNano());
+        }
+    }
+
+    private static LocalDateTime readDateTime(DataInput in) throws IOException {
+        return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+    }
+}
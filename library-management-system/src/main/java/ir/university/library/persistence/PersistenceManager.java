@@ -0,0 +1,337 @@
+package ir.university.library.persistence;
+
+import ir.university.library.model.*;
+import ir.university.library.repository.BookRepository;
+import ir.university.library.repository.BorrowRepository;
+import ir.university.library.repository.ChangeLog;
+import ir.university.library.repository.UserRepository;
+import ir.university.library.util.Ids;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable storage for the three repositories.
+ * On open it restores the latest snapshot, replays the log written after
+ * it and then records every further mutation in the write-ahead log.
+ * A background task writes a new snapshot once enough entries have been
+ * logged, after which older log segments are deleted.
+ */
+public class PersistenceManager implements ChangeLog, Closeable {
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5;
+    public static final long DEFAULT_SNAPSHOT_THRESHOLD = 100_000;
+
+    private static final byte BOOK_SAVED = 1;
+    private static final byte BOOK_DELETED = 2;
+    private static final byte BOOKS_CLEARED = 3;
+    private static final byte USER_SAVED = 4;
+    private static final byte USER_DELETED = 5;
+    private static final byte USERS_CLEARED = 6;
+    private static final byte REQUEST_SAVED = 7;
+    private static final byte RECORD_SAVED = 8;
+    private static final byte BORROWS_CLEARED = 9;
+
+    private final BookRepository bookRepository;
+    private final UserRepository userRepository;
+    private final BorrowRepository borrowRepository;
+    private final SnapshotStore snapshots;
+    private final Path directory;
+    private final long snapshotThreshold;
+    private final Object snapshotLock = new Object();
+    private final WriteAheadLog log;
+    private final ScheduledExecutorService scheduler;
+    private long loggedAtLastSnapshot;
+    private volatile Exception snapshotFailure;
+
+    private PersistenceManager(Path directory, long flushIntervalMillis, long snapshotThreshold) throws IOException {
+        this.bookRepository = BookRepository.getInstance();
+        this.userRepository = UserRepository.getInstance();
+        this.borrowRepository = BorrowRepository.getInstance();
+        this.directory = directory;
+        this.snapshots = new SnapshotStore(directory);
+        this.snapshotThreshold = snapshotThreshold;
+
+        long segment = recover();
+        this.log = new WriteAheadLog(directory, segment, flushIntervalMillis);
+
+        bookRepository.setChangeLog(this);
+        userRepository.setChangeLog(this);
+        borrowRepository.setChangeLog(this);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshotIfDue, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Open the data directory with default settings
+     */
+    public static PersistenceManager open(Path directory) throws IOException {
+        return open(directory, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_SNAPSHOT_THRESHOLD);
+    }
+
+    /**
+     * Open the data directory, restore the repositories from it and start logging
+     */
+    public static PersistenceManager open(Path directory, long flushIntervalMillis,
+                                          long snapshotThreshold) throws IOException {
+        Files.createDirectories(directory);
+        return new PersistenceManager(directory, flushIntervalMillis, snapshotThreshold);
+    }
+
+    /**
+     * Load the newest snapshot and replay the log written after it.
+     * Returns the segment new entries should be appended to.
+     */
+    private long recover() throws IOException {
+        bookRepository.setChangeLog(ChangeLog.NONE);
+        userRepository.setChangeLog(ChangeLog.NONE);
+        borrowRepository.setChangeLog(ChangeLog.NONE);
+        bookRepository.clear();
+        userRepository.clear();
+        borrowRepository.clear();
+
+        // Log segments older than the newest snapshot are already gone, so an
+        // unreadable snapshot cannot be replaced by an older one
+        long base = 0;
+        List<Long> available = snapshots.list();
+        if (!available.isEmpty()) {
+            base = available.get(0);
+            load(snapshots.read(base));
+        }
+
+        long last = base;
+        List<Long> segments = WriteAheadLog.listSegments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            long segment = segments.get(i);
+            Path file = WriteAheadLog.segmentPath(directory, segment);
+            if (segment < base) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            // Only the newest segment may end in a torn write; damage anywhere
+            // else would replay later entries onto a state missing earlier ones
+            boolean newest = i == segments.size() - 1;
+            if (!WriteAheadLog.replay(file, this::apply, newest) && !newest) {
+                throw new IOException("Write-ahead log segment " + file + " is corrupt and later segments exist");
+            }
+            last = segment;
+        }
+        return last;
+    }
+
+    private void load(SnapshotStore.State state) {
+        Set<String> usernames = new HashSet<>();
+        for (User user : state.users) {
+            userRepository.save(user);
+            usernames.add(user.getUsername());
+        }
+        for (User user : userRepository.findAll()) {
+            if (!usernames.contains(user.getUsername())) {
+                userRepository.delete(user.getUsername());
+            }
+        }
+        for (Book book : state.books) {
+            restore(book);
+        }
+        for (BorrowRequest request : state.requests) {
+            restore(request);
+        }
+        for (BorrowRecord record : state.records) {
+            restore(record);
+        }
+    }
+
+    private void apply(byte[] entry) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry))) {
+            byte type = in.readByte();
+            switch (type) {
+                case BOOK_SAVED:
+                    restore(EntityCodec.readBook(in));
+                    break;
+                case BOOK_DELETED:
+                    bookRepository.delete(in.readUTF());
+                    break;
+                case BOOKS_CLEARED:
+                    bookRepository.clear();
+                    break;
+                case USER_SAVED:
+                    userRepository.save(EntityCodec.readUser(in));
+                    break;
+                case USER_DELETED:
+                    userRepository.delete(in.readUTF());
+                    break;
+                case USERS_CLEARED:
+                    userRepository.clear();
+                    break;
+                case REQUEST_SAVED:
+                    restore(EntityCodec.readRequest(in));
+                    break;
+                case RECORD_SAVED:
+                    restore(EntityCodec.readRecord(in));
+                    break;
+                case BORROWS_CLEARED:
+                    borrowRepository.clear();
+                    break;
+                default:
+                    throw new IOException("Unknown log entry type: " + type);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay log entry", e);
+        }
+    }
+
+    // Restored IDs are fed to the ID generator so it never issues them again
+    private void restore(Book book) {
+        Ids.advancePast(book.getBookId());
+        bookRepository.save(book);
+    }
+
+    private void restore(BorrowRequest request) {
+        Ids.advancePast(request.getRequestId());
+        borrowRepository.saveRequest(request);
+    }
+
+    private void restore(BorrowRecord record) {
+        Ids.advancePast(record.getRecordId());
+        borrowRepository.saveRecord(record);
+    }
+
+    /**
+     * Write a snapshot now and drop the log segments it covers
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long logged = log.appendedCount();
+            long segment = log.rotate();
+            SnapshotStore.State state = new SnapshotStore.State(
+                    userRepository.findAll(),
+                    bookRepository.findAll(),
+                    borrowRepository.findAllRequests(),
+                    borrowRepository.findAllRecords());
+            snapshots.write(segment, state);
+            snapshots.deleteOlderThan(segment);
+            for (long older : WriteAheadLog.listSegments(directory)) {
+                if (older < segment) {
+                    Files.deleteIfExists(WriteAheadLog.segmentPath(directory, older));
+                }
+            }
+            loggedAtLastSnapshot = logged;
+            snapshotFailure = null;
+        }
+    }
+
+    private void snapshotIfDue() {
+        try {
+            if (log.appendedCount() - loggedAtLastSnapshot >= snapshotThreshold) {
+                snapshot();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The log still holds everything, so keep running; the next tick
+            // retries, and close() reports the failure if none succeeded
+            snapshotFailure = e;
+        }
+    }
+
+    /**
+     * Block until every mutation so far is on disk
+     */
+    @Override
+    public void sync() {
+        log.sync();
+    }
+
+    /**
+     * Close the log. Throws if the last background snapshot failed and no
+     * later one succeeded, after the log itself has been closed.
+     */
+    @Override
+    public void close() throws IOException {
+        bookRepository.setChangeLog(ChangeLog.NONE);
+        userRepository.setChangeLog(ChangeLog.NONE);
+        borrowRepository.setChangeLog(ChangeLog.NONE);
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        Exception failure = snapshotFailure;
+        if (failure != null) {
+            throw new IOException("Background snapshot failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    // ChangeLog implementation
+
+    @Override
+    public void bookSaved(Book book) {
+        append(BOOK_SAVED, out -> EntityCodec.writeBook(out, book));
+    }
+
+    @Override
+    public void bookDeleted(String bookId) {
+        append(BOOK_DELETED, out -> out.writeUTF(bookId));
+    }
+
+    @Override
+    public void booksCleared() {
+        append(BOOKS_CLEARED, out -> { });
+    }
+
+    @Override
+    public void userSaved(User user) {
+        append(USER_SAVED, out -> EntityCodec.writeUser(out, user));
+    }
+
+    @Override
+    public void userDeleted(String username) {
+        append(USER_DELETED, out -> out.writeUTF(username));
+    }
+
+    @Override
+    public void usersCleared() {
+        append(USERS_CLEARED, out -> { });
+    }
+
+    @Override
+    public void requestSaved(BorrowRequest request) {
+        append(REQUEST_SAVED, out -> EntityCodec.writeRequest(out, request));
+    }
+
+    @Override
+    public void recordSaved(BorrowRecord record) {
+        append(RECORD_SAVED, out -> EntityCodec.writeRecord(out, record));
+    }
+
+    @Override
+    public void borrowsCleared() {
+        append(BORROWS_CLEARED, out -> { });
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void append(byte type, EntryWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode log entry", e);
+        }
+        log.append(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,160 @@
+package ir.university.library.persistence;
+
+import ir.university.library.model.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compacted full copies of the repository contents.
+ * A snapshot is named after the first log segment that must be replayed
+ * on top of it, and is written to a temporary file and renamed so a crash
+ * never leaves a half-written snapshot behind.
+ */
+class SnapshotStore {
+    private static final int MAGIC = 0x4C4D5353;
+    private static final int VERSION = 2;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+
+    SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Contents of one snapshot
+     */
+    static class State {
+        final List<User> users;
+        final List<Book> books;
+        final List<BorrowRequest> requests;
+        final List<BorrowRecord> records;
+
+        State(List<User> users, List<Book> books, List<BorrowRequest> requests, List<BorrowRecord> records) {
+            this.users = users;
+            this.books = books;
+            this.requests = requests;
+            this.records = records;
+        }
+    }
+
+    private Path snapshotPath(long segment) {
+        return directory.resolve(String.format("%s%016d%s", PREFIX, segment, SUFFIX));
+    }
+
+    /**
+     * Snapshot segment numbers present in the directory, newest first
+     */
+    List<Long> list() throws IOException {
+        List<Long> snapshots = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted((a, b) -> Long.compare(b, a))
+                    .forEach(snapshots::add);
+        }
+        return snapshots;
+    }
+
+    void write(long segment, State state) throws IOException {
+        Path target = snapshotPath(segment);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(segment);
+            out.writeInt(state.users.size());
+            for (User user : state.users) {
+                EntityCodec.writeUser(out, user);
+            }
+            out.writeInt(state.books.size());
+            for (Book book : state.books) {
+                EntityCodec.writeBook(out, book);
+            }
+            out.writeInt(state.requests.size());
+            for (BorrowRequest request : state.requests) {
+                EntityCodec.writeRequest(out, request);
+            }
+            out.writeInt(state.records.size());
+            for (BorrowRecord record : state.records) {
+                EntityCodec.writeRecord(out, record);
+            }
+            out.flush();
+            long checksum = crc.getValue();
+            file.write(new byte[]{
+                    (byte) (checksum >>> 56), (byte) (checksum >>> 48), (byte) (checksum >>> 40),
+                    (byte) (checksum >>> 32), (byte) (checksum >>> 24), (byte) (checksum >>> 16),
+                    (byte) (checksum >>> 8), (byte) checksum});
+            file.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        WriteAheadLog.syncDirectory(target.getParent());
+    }
+
+    State read(long segment) throws IOException {
+        Path file = snapshotPath(segment);
+        CRC32 crc = new CRC32();
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(raw, crc));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != segment) {
+                throw new IOException("Not a valid snapshot: " + file);
+            }
+            int userCount = in.readInt();
+            List<User> users = new ArrayList<>(userCount);
+            for (int i = 0; i < userCount; i++) {
+                users.add(EntityCodec.readUser(in));
+            }
+            int bookCount = in.readInt();
+            List<Book> books = new ArrayList<>(bookCount);
+            for (int i = 0; i < bookCount; i++) {
+                books.add(EntityCodec.readBook(in));
+            }
+            int requestCount = in.readInt();
+            List<BorrowRequest> requests = new ArrayList<>(requestCount);
+            for (int i = 0; i < requestCount; i++) {
+                requests.add(EntityCodec.readRequest(in));
+            }
+            int recordCount = in.readInt();
+            List<BorrowRecord> records = new ArrayList<>(recordCount);
+            for (int i = 0; i < recordCount; i++) {
+                records.add(EntityCodec.readRecord(in));
+            }
+            long expected = crc.getValue();
+            if (new DataInputStream(raw).readLong() != expected) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+            return new State(users, books, requests, records);
+        }
+    }
+
+    /**
+     * Remove snapshots older than the given one and leftover temporary files
+     */
+    void deleteOlderThan(long segment) throws IOException {
+        for (long older : list()) {
+            if (older < segment) {
+                Files.deleteIfExists(snapshotPath(older));
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX + ".tmp")) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+}
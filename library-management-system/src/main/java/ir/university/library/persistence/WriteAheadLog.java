@@ -0,0 +1,287 @@
+package ir.university.library.persistence;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary log split into numbered segment files.
+ * Appends only copy the entry into a memory buffer; a background thread
+ * writes the buffer and forces it to disk every flush interval, so many
+ * entries share one fsync. Callers that need durability call sync().
+ *
+ * Each entry is stored as [length][crc32][payload]. Reading stops at the
+ * first truncated or corrupt entry, which is how a torn tail is detected;
+ * a length running past the end of the file counts as corrupt, so a
+ * damaged header can never make recovery allocate a huge buffer.
+ */
+class WriteAheadLog implements Closeable {
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final Object bufferLock = new Object();
+    private final Object ioLock = new Object();
+    private final Thread flusher;
+    private final long flushIntervalMillis;
+
+    private ByteArrayOutputStream buffer;
+    private FileChannel channel;
+    private long segment;
+    private long appended;
+    private long durable;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    WriteAheadLog(Path directory, long segment, long flushIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.segment = segment;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.buffer = new ByteArrayOutputStream();
+        this.channel = openSegment(segment);
+        this.flusher = new Thread(this::runFlusher, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(String.format("%s%016d%s", PREFIX, segment, SUFFIX));
+    }
+
+    /**
+     * Segment numbers present in the directory, in ascending order
+     */
+    static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .forEach(segments::add);
+        }
+        return segments;
+    }
+
+    /**
+     * Pass every intact entry of a segment to the consumer, stopping at the
+     * first corrupt one. Returns false if the segment had a corrupt or torn
+     * tail; with truncateTail that tail is cut off so later appends start
+     * from a clean position, otherwise the file is left as it was.
+     */
+    static boolean replay(Path file, Consumer<byte[]> consumer, boolean truncateTail) throws IOException {
+        long fileSize = Files.size(file);
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > fileSize - validLength - 8) {
+                    break;
+                }
+                long checksum;
+                byte[] payload = new byte[length];
+                try {
+                    checksum = in.readInt() & 0xFFFFFFFFL;
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (checksum(payload) != checksum) {
+                    break;
+                }
+                consumer.accept(payload);
+                validLength += 8 + length;
+            }
+        }
+        if (validLength == fileSize) {
+            return true;
+        }
+        if (truncateTail) {
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(validLength);
+                truncate.force(true);
+            }
+        }
+        return false;
+    }
+
+    private static long checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    /**
+     * Open a segment for appending. A newly created file is only durable
+     * once its directory entry is, so the directory is forced as well.
+     */
+    private FileChannel openSegment(long number) throws IOException {
+        FileChannel opened = FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try {
+            syncDirectory(directory);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        return opened;
+    }
+
+    /**
+     * Force a directory's entries to disk after a file in it was created or
+     * renamed. Platforms that cannot open a directory as a channel skip it.
+     */
+    static void syncDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (AccessDeniedException | UnsupportedOperationException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Queue an entry for the next group commit
+     */
+    void append(byte[] payload) {
+        checkHealthy();
+        synchronized (bufferLock) {
+            writeInt(buffer, payload.length);
+            writeInt(buffer, (int) checksum(payload));
+            buffer.write(payload, 0, payload.length);
+            appended++;
+            if (buffer.size() >= 1 << 20) {
+                bufferLock.notifyAll();
+            }
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Block until every entry appended so far is on disk
+     */
+    void sync() {
+        checkHealthy();
+        try {
+            flush();
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException("Failed to sync write-ahead log", e);
+        }
+    }
+
+    /**
+     * Flush and start a new segment; returns the new segment number.
+     * Entries appended after this call land in the new segment.
+     */
+    long rotate() throws IOException {
+        synchronized (ioLock) {
+            flush();
+            channel.close();
+            segment++;
+            channel = openSegment(segment);
+            return segment;
+        }
+    }
+
+    long currentSegment() {
+        synchronized (ioLock) {
+            return segment;
+        }
+    }
+
+    long appendedCount() {
+        synchronized (bufferLock) {
+            return appended;
+        }
+    }
+
+    private void flush() throws IOException {
+        synchronized (ioLock) {
+            byte[] data;
+            long upTo;
+            synchronized (bufferLock) {
+                if (durable == appended) {
+                    return;
+                }
+                data = buffer.toByteArray();
+                buffer = new ByteArrayOutputStream(Math.max(32, data.length));
+                upTo = appended;
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(data);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+            synchronized (bufferLock) {
+                durable = upTo;
+            }
+        }
+    }
+
+    private void runFlusher() {
+        while (!closed) {
+            try {
+                synchronized (bufferLock) {
+                    bufferLock.wait(flushIntervalMillis);
+                }
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+        }
+    }
+
+    private void checkHealthy() {
+        if (failure != null) {
+            throw new IllegalStateException("Write-ahead log is unavailable", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Write-ahead log is closed");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (bufferLock) {
+            bufferLock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (ioLock) {
+            flush();
+            channel.close();
+        }
+    }
+}
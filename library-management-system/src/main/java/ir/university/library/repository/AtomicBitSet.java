@@ -0,0 +1,115 @@
+package ir.university.library.repository;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A growable set of non-negative ints whose bits are flipped with CAS, so
+ * writers of different values never wait on each other. Meant for dense
+ * values such as book ordinals, where a plain bitset is already as small as
+ * a compressed one. Bits live in chunks of 65536 that are added as the
+ * values grow; only adding a chunk takes a lock.
+ */
+class AtomicBitSet {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_WORDS = 1 << (CHUNK_BITS - 6);
+
+    private volatile AtomicLongArray[] chunks;
+    private final LongAdder cardinality;
+
+    AtomicBitSet() {
+        this.chunks = new AtomicLongArray[0];
+        this.cardinality = new LongAdder();
+    }
+
+    /**
+     * Set or clear one bit
+     */
+    void set(int value, boolean present) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must not be negative: " + value);
+        }
+        int chunk = value >>> CHUNK_BITS;
+        AtomicLongArray[] current = chunks;
+        if (chunk >= current.length) {
+            if (!present) {
+                return;
+            }
+            current = grow(chunk);
+        }
+        AtomicLongArray words = current[chunk];
+        int word = (value >>> 6) & (CHUNK_WORDS - 1);
+        long bit = 1L << value;
+        long previous = present ? words.getAndUpdate(word, w -> w | bit) : words.getAndUpdate(word, w -> w & ~bit);
+        if (((previous & bit) != 0) != present) {
+            cardinality.add(present ? 1 : -1);
+        }
+    }
+
+    private synchronized AtomicLongArray[] grow(int chunk) {
+        AtomicLongArray[] current = chunks;
+        if (chunk < current.length) {
+            return current;
+        }
+        AtomicLongArray[] grown = new AtomicLongArray[chunk + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        for (int i = current.length; i < grown.length; i++) {
+            grown[i] = new AtomicLongArray(CHUNK_WORDS);
+        }
+        chunks = grown;
+        return grown;
+    }
+
+    boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        AtomicLongArray[] current = chunks;
+        int chunk = value >>> CHUNK_BITS;
+        return chunk < current.length
+                && (current[chunk].get((value >>> 6) & (CHUNK_WORDS - 1)) & (1L << value)) != 0;
+    }
+
+    long cardinality() {
+        return cardinality.sum();
+    }
+
+    /**
+     * A compressed copy of the set bits; bits flipped meanwhile may or may not show
+     */
+    RoaringBitmap toBitmap() {
+        RoaringBitmap result = new RoaringBitmap();
+        AtomicLongArray[] current = chunks;
+        for (int chunk = 0; chunk < current.length; chunk++) {
+            for (int i = 0; i < CHUNK_WORDS; i++) {
+                long word = current[chunk].get(i);
+                while (word != 0) {
+                    result.add((chunk << CHUNK_BITS) | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A new bitmap with the values of the other bitmap that are set here
+     */
+    RoaringBitmap and(RoaringBitmap other) {
+        RoaringBitmap result = new RoaringBitmap();
+        other.forEach(value -> {
+            if (contains(value)) {
+                result.add(value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Drop every bit; writers must be held off by the caller
+     */
+    synchronized void clear() {
+        chunks = new AtomicLongArray[0];
+        cardinality.reset();
+    }
+}
@@ -0,0 +1,147 @@
+package ir.university.library.repository;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A BK-tree of words under Levenshtein distance. Each child hangs off its
+ * parent at the index of their distance, so by the triangle inequality a
+ * search within k edits of a word at distance d from a node only descends
+ * into children d - k to d + k, and visits a small part of the dictionary.
+ * Words are only added; searches run concurrently under a read lock.
+ */
+class BkTree {
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Node {
+        final String word;
+        Node[] children = NO_CHILDREN;
+
+        Node(String word) {
+            this.word = word;
+        }
+    }
+
+    private final ReadWriteLock lock;
+    private Node root;
+    private int size;
+
+    BkTree() {
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Add the word unless it is already present
+     */
+    void add(String word) {
+        lock.writeLock().lock();
+        try {
+            if (root == null) {
+                root = new Node(word);
+                size++;
+                return;
+            }
+            Node node = root;
+            while (true) {
+                int distance = distance(word, node.word);
+                if (distance == 0) {
+                    return;
+                }
+                if (distance >= node.children.length) {
+                    node.children = Arrays.copyOf(node.children, distance + 1);
+                }
+                Node child = node.children[distance];
+                if (child == null) {
+                    node.children[distance] = new Node(word);
+                    size++;
+                    return;
+                }
+                node = child;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Pass every word within maxDistance edits of the query to the action,
+     * together with its distance
+     */
+    void search(String query, int maxDistance, ObjIntConsumer<String> action) {
+        lock.readLock().lock();
+        try {
+            if (root == null) {
+                return;
+            }
+            Deque<Node> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Node node = pending.pop();
+                int distance = distance(query, node.word);
+                if (distance <= maxDistance) {
+                    action.accept(node.word, distance);
+                }
+                int from = Math.max(1, distance - maxDistance);
+                int to = Math.min(node.children.length - 1, distance + maxDistance);
+                for (int i = from; i <= to; i++) {
+                    if (node.children[i] != null) {
+                        pending.push(node.children[i]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            root = null;
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Levenshtein distance, keeping only two rows of the table
+     */
+    static int distance(String a, String b) {
+        if (a.length() < b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,108 @@
+package ir.university.library.repository;
+
+import ir.university.library.model.Book;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dense int ordinals for the books in the catalogue, so book sets can be kept
+ * as bitmaps. Ordinals of deleted books are reused, which keeps the bitmaps
+ * compact however many books come and go. Lookups are lock-free; assignment
+ * and release are synchronized.
+ */
+class BookOrdinals {
+    private final Map<String, Integer> ordinalById;
+    private volatile AtomicReferenceArray<Book> bookByOrdinal;
+    private int[] free;
+    private int freeCount;
+    private int next;
+
+    BookOrdinals() {
+        this.ordinalById = new ConcurrentHashMap<>();
+        this.bookByOrdinal = new AtomicReferenceArray<>(64);
+        this.free = new int[16];
+    }
+
+    /**
+     * The book's ordinal, assigned on first use; also records the book
+     * instance the ordinal now stands for
+     */
+    synchronized int assign(Book book) {
+        Integer existing = ordinalById.get(book.getBookId());
+        int ordinal;
+        if (existing != null) {
+            ordinal = existing;
+        } else {
+            ordinal = freeCount > 0 ? free[--freeCount] : next++;
+            ordinalById.put(book.getBookId(), ordinal);
+        }
+        AtomicReferenceArray<Book> table = bookByOrdinal;
+        if (ordinal >= table.length()) {
+            AtomicReferenceArray<Book> grown = new AtomicReferenceArray<>(table.length() * 2);
+            for (int i = 0; i < table.length(); i++) {
+                grown.set(i, table.get(i));
+            }
+            bookByOrdinal = table = grown;
+        }
+        table.set(ordinal, book);
+        return ordinal;
+    }
+
+    /**
+     * Free the book's ordinal for reuse; returns it, or -1 if it had none
+     */
+    synchronized int release(String bookId) {
+        Integer ordinal = ordinalById.remove(bookId);
+        if (ordinal == null) {
+            return -1;
+        }
+        bookByOrdinal.set(ordinal, null);
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = ordinal;
+        return ordinal;
+    }
+
+    /**
+     * The book's ordinal, or -1 if it has none
+     */
+    int ordinalOf(String bookId) {
+        Integer ordinal = ordinalById.get(bookId);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * The book holding the ordinal, or null if it is free
+     */
+    Book bookAt(int ordinal) {
+        AtomicReferenceArray<Book> table = bookByOrdinal;
+        return ordinal < table.length() ? table.get(ordinal) : null;
+    }
+
+    /**
+     * Bitmap of the ordinals of the given books, skipping unknown IDs
+     */
+    RoaringBitmap toBitmap(Collection<String> bookIds) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        for (String bookId : bookIds) {
+            int ordinal = ordinalOf(bookId);
+            if (ordinal >= 0) {
+                bitmap.add(ordinal);
+            }
+        }
+        return bitmap;
+    }
+
+    synchronized void clear() {
+        ordinalById.clear();
+        bookByOrdinal = new AtomicReferenceArray<>(64);
+        free = new int[16];
+        freeCount = 0;
+        next = 0;
+    }
+}
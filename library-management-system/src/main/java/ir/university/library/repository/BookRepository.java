@@ -1,19 +1,57 @@
 package ir.university.library.repository;
 
 import ir.university.library.model.Book;
+import ir.university.library.util.InputValidator;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
 
 /**
- * Repository for managing books in memory
+ * Repository for managing books in memory.
+ * Reads are lock-free; writes to one book are serialized by a striped lock
+ * so its indexes and change-log entries follow the order of its saves.
+ * Search results are cached by query until the next save, delete or
+ * availability change. Every book also gets a dense ordinal, and the
+ * ordinals of the available books are kept in a lock-free bitset, so
+ * available-only filters are bitmap intersections and counting them is a
+ * running total.
+ * Publication years are indexed the same way, so year ranges join in.
+ * ISBNs are indexed in normalized form for exact lookups.
  */
 public class BookRepository {
-    private final Map<String, Book> books;
+    private final IdMap<Book> books;
+    private final TextIndex titleIndex;
+    private final TextIndex authorIndex;
+    private final StripedLock locks;
+    private final StaffActivityIndex staffActivity;
+    private final SearchCache<SearchKey> searchCache;
+    private final BookOrdinals ordinals;
+    private final AtomicBitSet available;
+    private final YearIndex yearIndex;
+    private final Map<String, Set<String>> bookIdsByIsbn;
+    private final Map<String, String> isbnByBookId;
+    private final Book.AvailabilityListener availabilityListener;
+    private volatile ChangeLog changeLog;
     private static BookRepository instance;
 
     private BookRepository() {
-        this.books = new HashMap<>();
+        this.books = new IdMap<>();
+        this.titleIndex = new TextIndex();
+        this.authorIndex = new TextIndex();
+        this.locks = new StripedLock();
+        this.staffActivity = new StaffActivityIndex();
+        this.searchCache = new SearchCache<>();
+        this.ordinals = new BookOrdinals();
+        this.available = new AtomicBitSet();
+        this.yearIndex = new YearIndex();
+        this.bookIdsByIsbn = new ConcurrentHashMap<>();
+        this.isbnByBookId = new ConcurrentHashMap<>();
+        this.availabilityListener = this::availabilityChanged;
+        this.changeLog = ChangeLog.NONE;
     }
 
     public static synchronized BookRepository getInstance() {
@@ -23,72 +61,504 @@ public class BookRepository {
         return instance;
     }
 
+    /**
+     * Attach a change log that receives every mutation (ChangeLog.NONE to detach)
+     */
+    public void setChangeLog(ChangeLog changeLog) {
+        this.changeLog = changeLog == null ? ChangeLog.NONE : changeLog;
+    }
+
     public void save(Book book) {
         if (book == null) {
             throw new IllegalArgumentException("Book cannot be null");
         }
-        books.put(book.getBookId(), book);
+        Lock lock = locks.forKey(book.getBookId());
+        lock.lock();
+        try {
+            Book previous = books.put(book.getBookId(), book);
+            if (previous != null && previous != book) {
+                previous.setAvailabilityListener(null);
+            }
+            if (previous == null) {
+                staffActivity.addRegistered(book.getRegisteredBy(), 1);
+            } else if (!Objects.equals(previous.getRegisteredBy(), book.getRegisteredBy())) {
+                staffActivity.addRegistered(previous.getRegisteredBy(), -1);
+                staffActivity.addRegistered(book.getRegisteredBy(), 1);
+            }
+            titleIndex.add(book.getBookId(), book.getTitle());
+            authorIndex.add(book.getBookId(), book.getAuthor());
+            book.setAvailabilityListener(availabilityListener);
+            int ordinal = ordinals.assign(book);
+            yearIndex.put(ordinal, book.getPublicationYear());
+            indexIsbn(book.getBookId(), InputValidator.normalizeISBN(book.getIsbn()));
+            updateAvailable(ordinal, book);
+            searchCache.invalidate();
+            changeLog.bookSaved(book);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Save several books, e.g. the copies touched by one batch of loans
+     */
+    public void saveAll(Collection<Book> batch) {
+        for (Book book : batch) {
+            save(book);
+        }
     }
 
     public Optional<Book> findById(String bookId) {
         return Optional.ofNullable(books.get(bookId));
     }
 
+    /**
+     * Allocation-free lookup for internal callers; null if there is no such book
+     */
+    public Book getById(String bookId) {
+        return books.get(bookId);
+    }
+
+    /**
+     * Look up several books at once; missing IDs are left out of the map
+     */
+    public Map<String, Book> findByIds(Collection<String> bookIds) {
+        Map<String, Book> result = new HashMap<>();
+        for (String bookId : bookIds) {
+            Book book = books.get(bookId);
+            if (book != null) {
+                result.put(bookId, book);
+            }
+        }
+        return result;
+    }
+
     public List<Book> findAll() {
-        return new ArrayList<>(books.values());
+        return books.values();
     }
 
-    public List<Book> search(String title, Integer year, String author) {
-        return books.values().stream()
-                .filter(book -> {
-                    boolean matches = true;
-                    if (title != null && !title.isEmpty()) {
-                        matches = book.getTitle().toLowerCase()
-                                .contains(title.toLowerCase());
-                    }
-                    if (matches && year != null) {
-                        matches = book.getPublicationYear() == year;
-                    }
-                    if (matches && author != null && !author.isEmpty()) {
-                        matches = book.getAuthor().toLowerCase()
-                                .contains(author.toLowerCase());
+    /**
+     * Visit every book without copying the catalogue; the action must not save or delete books
+     */
+    public void forEach(Consumer<? super Book> action) {
+        books.forEach(action);
+    }
+
+    /**
+     * Weakly consistent stream over all books, without copying the catalogue
+     */
+    public Stream<Book> stream() {
+        return books.stream();
+    }
+
+    /**
+     * Claim the ISBN for the book ahead of the save that gives it that ISBN.
+     * The duplicate check and the claim are one atomic step on the ISBN, so
+     * two books racing for the same ISBN cannot both get it.
+     * Blank ISBNs are not claimed.
+     *
+     * @throws IllegalArgumentException if another book already holds the ISBN
+     */
+    public void claimIsbn(String bookId, String isbn) {
+        String normalized = InputValidator.normalizeISBN(isbn);
+        if (normalized == null) {
+            return;
+        }
+        Lock lock = locks.forKey(bookId);
+        lock.lock();
+        try {
+            bookIdsByIsbn.compute(normalized, (key, holders) -> {
+                Set<String> result = holders != null ? holders : ConcurrentHashMap.newKeySet();
+                for (String holder : result) {
+                    if (!holder.equals(bookId)) {
+                        throw new IllegalArgumentException("A book with ISBN " + isbn + " is already registered");
                     }
-                    return matches;
-                })
-                .collect(Collectors.toList());
+                }
+                result.add(bookId);
+                return result;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Point the ISBN at the book, dropping the book's previous ISBN entry.
+     * Books saved directly may share an ISBN, so each ISBN keeps every book
+     * holding it and deleting one copy leaves the others findable.
+     */
+    private void indexIsbn(String bookId, String isbn) {
+        String previous = isbn != null ? isbnByBookId.put(bookId, isbn) : isbnByBookId.remove(bookId);
+        if (previous != null && !previous.equals(isbn)) {
+            bookIdsByIsbn.computeIfPresent(previous, (key, holders) -> {
+                holders.remove(bookId);
+                return holders.isEmpty() ? null : holders;
+            });
+        }
+        if (isbn != null) {
+            bookIdsByIsbn.compute(isbn, (key, holders) -> {
+                Set<String> result = holders != null ? holders : ConcurrentHashMap.newKeySet();
+                result.add(bookId);
+                return result;
+            });
+        }
+    }
+
+    /**
+     * The book with this ISBN, written with or without hyphens and as ISBN-10 or ISBN-13
+     */
+    public Optional<Book> findByIsbn(String isbn) {
+        String normalized = InputValidator.normalizeISBN(isbn);
+        Set<String> holders = normalized == null ? null : bookIdsByIsbn.get(normalized);
+        if (holders != null) {
+            for (String bookId : holders) {
+                Book book = books.get(bookId);
+                if (book != null) {
+                    return Optional.of(book);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void availabilityChanged(Book book) {
+        Lock lock = locks.forKey(book.getBookId());
+        lock.lock();
+        try {
+            // A replaced or deleted copy no longer counts
+            if (books.get(book.getBookId()) == book) {
+                updateAvailable(ordinals.ordinalOf(book.getBookId()), book);
+            }
+        } finally {
+            lock.unlock();
+        }
+        searchCache.invalidate();
+    }
+
+    /**
+     * Set the book's bit from its current state; idempotent, so it ends up
+     * exact however saves and availability changes interleave
+     */
+    private void updateAvailable(int ordinal, Book book) {
+        available.set(ordinal, book.isAvailable());
+    }
+
+    public List<Book> search(String title, Integer year, String author) {
+        return search(title, year, year, author, false);
+    }
+
+    /**
+     * Search with optional filters; with availableOnly, lent and withdrawn books are left out
+     */
+    public List<Book> search(String title, Integer year, String author, boolean availableOnly) {
+        return search(title, year, year, author, availableOnly);
+    }
+
+    /**
+     * Search with optional filters, matching books published from fromYear to
+     * toYear inclusive; a null year bound leaves that side of the range open
+     */
+    public List<Book> search(String title, Integer fromYear, Integer toYear, String author, boolean availableOnly) {
+        String titleQuery = title != null && !title.isEmpty() ? TextIndex.normalize(title) : null;
+        String authorQuery = author != null && !author.isEmpty() ? TextIndex.normalize(author) : null;
+        if (titleQuery == null && fromYear == null && toYear == null && authorQuery == null) {
+            // Unfiltered: the whole catalogue, not worth caching
+            return availableOnly ? findAvailableBooks() : books.values();
+        }
+
+        SearchKey key = new SearchKey(titleQuery, fromYear, toYear, authorQuery, availableOnly);
+        List<String> cached = searchCache.get(key);
+        if (cached != null) {
+            return books.getAll(cached);
+        }
+        long generation = searchCache.generation();
+        List<Book> results = searchUncached(titleQuery, fromYear, toYear, authorQuery, availableOnly);
+        List<String> bookIds = new ArrayList<>(results.size());
+        for (Book book : results) {
+            bookIds.add(book.getBookId());
+        }
+        searchCache.put(key, generation, bookIds);
+        return results;
+    }
+
+    /**
+     * Normalized search filters as a cache key; null filters are distinct
+     * from any text, so a search for "null" is not an unfiltered one
+     */
+    private static final class SearchKey {
+        final String titleQuery;
+        final Integer fromYear;
+        final Integer toYear;
+        final String authorQuery;
+        final boolean availableOnly;
+
+        SearchKey(String titleQuery, Integer fromYear, Integer toYear, String authorQuery, boolean availableOnly) {
+            this.titleQuery = titleQuery;
+            this.fromYear = fromYear;
+            this.toYear = toYear;
+            this.authorQuery = authorQuery;
+            this.availableOnly = availableOnly;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SearchKey)) {
+                return false;
+            }
+            SearchKey other = (SearchKey) o;
+            return availableOnly == other.availableOnly
+                    && Objects.equals(titleQuery, other.titleQuery)
+                    && Objects.equals(fromYear, other.fromYear)
+                    && Objects.equals(toYear, other.toYear)
+                    && Objects.equals(authorQuery, other.authorQuery);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(titleQuery, fromYear, toYear, authorQuery, availableOnly);
+        }
+    }
+
+    private List<Book> searchUncached(String titleQuery, Integer fromYear, Integer toYear,
+                                      String authorQuery, boolean availableOnly) {
+        Set<String> candidates = null;
+        if (titleQuery != null) {
+            candidates = titleIndex.candidates(titleQuery);
+        }
+        if (authorQuery != null && (candidates == null || !candidates.isEmpty())) {
+            candidates = TextIndex.intersect(candidates, authorIndex.candidates(authorQuery));
+        }
+
+        // Narrow by ordinal bitmaps; null means every book is still a candidate
+        RoaringBitmap selected = candidates != null ? ordinals.toBitmap(candidates) : null;
+        boolean yearFiltered = fromYear != null || toYear != null;
+        if (yearFiltered) {
+            RoaringBitmap years = yearIndex.select(fromYear, toYear);
+            selected = selected != null ? selected.and(years) : years;
+        }
+        if (availableOnly) {
+            selected = selected != null ? available.and(selected) : available.toBitmap();
+        }
+        Collection<Book> matches = selected != null ? booksAt(selected) : books.values();
+
+        List<Book> results = new ArrayList<>();
+        for (Book book : matches) {
+            String bookId = book.getBookId();
+            if (titleQuery != null && !titleIndex.matches(bookId, titleQuery)) {
+                continue;
+            }
+            int year = book.getPublicationYear();
+            if (yearFiltered && ((fromYear != null && year < fromYear) || (toYear != null && year > toYear))) {
+                continue;
+            }
+            if (availableOnly && !book.isAvailable()) {
+                continue;
+            }
+            if (authorQuery != null && !authorIndex.matches(bookId, authorQuery)) {
+                continue;
+            }
+            results.add(book);
+        }
+        return results;
     }
 
     public List<Book> searchByTitle(String title) {
         if (title == null || title.isEmpty()) {
             return new ArrayList<>();
         }
-        return books.values().stream()
-                .filter(book -> book.getTitle().toLowerCase()
-                        .contains(title.toLowerCase()))
-                .collect(Collectors.toList());
+        return search(title, null, null);
+    }
+
+    /**
+     * Typo-tolerant search over titles and authors. Every word of the query
+     * must be within a few edits of some word of the book's title or author:
+     * none for words of up to three letters, one up to seven, two beyond.
+     * Results are ordered by total edit distance, closest first; the
+     * dictionary lookups go through BK-trees, so only the books of the
+     * matching words are touched.
+     */
+    public List<Book> fuzzySearch(String query) {
+        return fuzzySearch(query, BookRepository::defaultMaxDistance);
+    }
+
+    /**
+     * Typo-tolerant search allowing up to maxDistance edits per query word
+     */
+    public List<Book> fuzzySearch(String query, int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("Edit distance cannot be negative");
+        }
+        return fuzzySearch(query, token -> maxDistance);
+    }
+
+    private static int defaultMaxDistance(String token) {
+        return token.length() <= 3 ? 0 : token.length() <= 7 ? 1 : 2;
+    }
+
+    /**
+     * Title and author tokens close to one query word, with the number of
+     * postings they cover
+     */
+    private static final class FuzzyTerm {
+        final Map<String, Integer> titleTokens;
+        final Map<String, Integer> authorTokens;
+        final long cost;
+
+        FuzzyTerm(Map<String, Integer> titleTokens, Map<String, Integer> authorTokens, long cost) {
+            this.titleTokens = titleTokens;
+            this.authorTokens = authorTokens;
+            this.cost = cost;
+        }
+    }
+
+    private List<Book> fuzzySearch(String query, ToIntFunction<String> maxDistanceFor) {
+        List<FuzzyTerm> terms = new ArrayList<>();
+        for (String token : TextIndex.tokenize(TextIndex.normalize(query))) {
+            int maxDistance = maxDistanceFor.applyAsInt(token);
+            Map<String, Integer> titleTokens = titleIndex.similarTokens(token, maxDistance);
+            Map<String, Integer> authorTokens = authorIndex.similarTokens(token, maxDistance);
+            long cost = titleIndex.postingCount(titleTokens) + authorIndex.postingCount(authorTokens);
+            if (cost == 0) {
+                return new ArrayList<>();
+            }
+            terms.add(new FuzzyTerm(titleTokens, authorTokens, cost));
+        }
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Expand only the most selective word; the others just check its books
+        terms.sort(Comparator.comparingLong(term -> term.cost));
+        FuzzyTerm first = terms.get(0);
+        Map<String, Integer> scores = new HashMap<>();
+        titleIndex.collectBooks(first.titleTokens, scores);
+        authorIndex.collectBooks(first.authorTokens, scores);
+        for (int i = 1; i < terms.size() && !scores.isEmpty(); i++) {
+            FuzzyTerm term = terms.get(i);
+            Iterator<Map.Entry<String, Integer>> entries = scores.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Integer> entry = entries.next();
+                int distance = Math.min(titleIndex.closestDistance(entry.getKey(), term.titleTokens),
+                        authorIndex.closestDistance(entry.getKey(), term.authorTokens));
+                if (distance == Integer.MAX_VALUE) {
+                    entries.remove();
+                } else {
+                    entry.setValue(entry.getValue() + distance);
+                }
+            }
+        }
+
+        List<Book> results = books.getAll(scores.keySet());
+        results.sort(Comparator.comparingInt(book -> scores.get(book.getBookId())));
+        return results;
+    }
+
+    /**
+     * Number of searches answered from the result cache
+     */
+    public long getSearchCacheHits() {
+        return searchCache.hitCount();
+    }
+
+    /**
+     * Number of searches that had to query the indexes
+     */
+    public long getSearchCacheMisses() {
+        return searchCache.missCount();
+    }
+
+    /**
+     * Retire every cached search result, so the next searches query the indexes
+     */
+    public void invalidateSearchCache() {
+        searchCache.invalidate();
     }
 
     public List<Book> findAvailableBooks() {
-        return books.values().stream()
-                .filter(Book::isAvailable)
-                .collect(Collectors.toList());
+        List<Book> result = booksAt(available.toBitmap());
+        // Drop any lent since the bitset was read
+        result.removeIf(book -> !book.isAvailable());
+        return result;
+    }
+
+    /**
+     * Number of available books, from the bitset's running count
+     */
+    public long countAvailable() {
+        return available.cardinality();
+    }
+
+    /**
+     * Resolve ordinals to books, skipping any deleted since the bitmap was read
+     */
+    private List<Book> booksAt(RoaringBitmap selected) {
+        List<Book> result = new ArrayList<>((int) selected.cardinality());
+        selected.forEach(ordinal -> {
+            Book book = ordinals.bookAt(ordinal);
+            if (book != null) {
+                result.add(book);
+            }
+        });
+        return result;
     }
 
     public long countAll() {
         return books.size();
     }
 
+    /**
+     * Books currently in the catalogue registered by the staff member, from the activity index
+     */
     public long countByRegisteredBy(String staffUsername) {
-        return books.values().stream()
-                .filter(book -> book.getRegisteredBy().equals(staffUsername))
-                .count();
+        return staffActivity.getBooksRegistered(staffUsername);
     }
 
     public void delete(String bookId) {
-        books.remove(bookId);
+        Lock lock = locks.forKey(bookId);
+        lock.lock();
+        try {
+            Book removed = books.remove(bookId);
+            int ordinal = ordinals.ordinalOf(bookId);
+            if (ordinal >= 0) {
+                // Clear the bit before the ordinal can be handed to another book
+                available.set(ordinal, false);
+                yearIndex.remove(ordinal);
+                ordinals.release(bookId);
+            }
+            indexIsbn(bookId, null);
+            if (removed != null) {
+                removed.setAvailabilityListener(null);
+                staffActivity.addRegistered(removed.getRegisteredBy(), -1);
+            }
+            titleIndex.remove(bookId);
+            authorIndex.remove(bookId);
+            searchCache.invalidate();
+            changeLog.bookDeleted(bookId);
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void clear() {
-        books.clear();
+        locks.lockAll();
+        try {
+            books.forEach(book -> book.setAvailabilityListener(null));
+            books.clear();
+            ordinals.clear();
+            yearIndex.clear();
+            bookIdsByIsbn.clear();
+            isbnByBookId.clear();
+            available.clear();
+            staffActivity.clear();
+            titleIndex.clear();
+            authorIndex.clear();
+            searchCache.clear();
+            changeLog.booksCleared();
+        } finally {
+            locks.unlockAll();
+        }
     }
 }
\ No newline at end of file
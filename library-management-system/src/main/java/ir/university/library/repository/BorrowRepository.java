@@ -1,23 +1,96 @@
 package ir.university.library.repository;
 
+import ir.university.library.model.Book;
 import ir.university.library.model.BorrowRecord;
 import ir.university.library.model.BorrowRequest;
 
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
- * Repository for managing borrow requests and records in memory
+ * Repository for managing borrow requests and records in memory.
+ * Reads are lock-free. Writes lock a stripe for the request or record they
+ * touch, so one entity's indexes and change-log entries follow the order
+ * of its saves; an approval takes the request stripe before the record one.
  */
 public class BorrowRepository {
-    private final Map<String, BorrowRequest> requests;
-    private final Map<String, BorrowRecord> records;
+    /**
+     * Returned records kept on the heap before they are moved to the cold tier
+     */
+    static final int ARCHIVE_THRESHOLD = 50_000;
+
+    /**
+     * Cold-tier rows scanned by one fork/join task during report aggregation
+     */
+    private static final int COLD_PARTITION_ROWS = 1 << 16;
+
+    private final IdMap<BorrowRequest> requests;
+    private final IdMap<BorrowRecord> records;
+    private final Map<BorrowRequest.Status, Map<String, BorrowRequest>> requestsByStatus;
+    private final NavigableMap<LocalDate, Map<String, BorrowRequest>> pendingByStartDate;
+    private final Map<String, LocalDate> pendingStartByRequest;
+    private final Map<String, Map<String, BorrowRecord>> recordsByStudent;
+    private final Map<String, Map<String, BorrowRecord>> recordsByBook;
+    private final Map<String, String> studentByRecord;
+    private final Map<String, String> bookByRecord;
+    private final Map<String, BorrowRecord> activeRecords;
+    private final OverdueTracker overdueTracker;
+    private final LoanCalendar loanCalendar;
+    private final BorrowStatistics statistics;
+    private final ColdRecordStore coldRecords;
+    private final StripedLock requestLocks;
+    private final StripedLock recordLocks;
+    private final Lock archiveLock;
+    private final AtomicBoolean archiveScheduled;
+    private final Set<String> savedWhileArchiving;
+    private final Executor archiver;
+    private volatile boolean archiving;
+    private volatile ChangeLog changeLog;
     private static BorrowRepository instance;
 
     private BorrowRepository() {
-        this.requests = new HashMap<>();
-        this.records = new HashMap<>();
+        this.requests = new IdMap<>();
+        this.records = new IdMap<>();
+        this.requestsByStatus = new EnumMap<>(BorrowRequest.Status.class);
+        for (BorrowRequest.Status status : BorrowRequest.Status.values()) {
+            requestsByStatus.put(status, new ConcurrentHashMap<>());
+        }
+        this.pendingByStartDate = new ConcurrentSkipListMap<>();
+        this.pendingStartByRequest = new ConcurrentHashMap<>();
+        this.recordsByStudent = new ConcurrentHashMap<>();
+        this.recordsByBook = new ConcurrentHashMap<>();
+        this.studentByRecord = new ConcurrentHashMap<>();
+        this.bookByRecord = new ConcurrentHashMap<>();
+        this.activeRecords = new ConcurrentHashMap<>();
+        this.overdueTracker = new OverdueTracker();
+        this.loanCalendar = new LoanCalendar();
+        this.statistics = new BorrowStatistics();
+        this.coldRecords = new ColdRecordStore();
+        this.requestLocks = new StripedLock();
+        this.recordLocks = new StripedLock();
+        this.archiveLock = new ReentrantLock();
+        this.archiveScheduled = new AtomicBoolean();
+        this.savedWhileArchiving = ConcurrentHashMap.newKeySet();
+        this.archiver = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "record-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.changeLog = ChangeLog.NONE;
     }
 
     public static synchronized BorrowRepository getInstance() {
@@ -27,39 +100,146 @@ public class BorrowRepository {
         return instance;
     }
 
+    /**
+     * Attach a change log that receives every mutation (ChangeLog.NONE to detach)
+     */
+    public void setChangeLog(ChangeLog changeLog) {
+        this.changeLog = changeLog == null ? ChangeLog.NONE : changeLog;
+    }
+
+    /**
+     * Block until every change logged so far is durable. The repositories
+     * share one change log, so this covers book and user changes too.
+     */
+    public void sync() {
+        changeLog.sync();
+    }
+
     // Request operations
     public void saveRequest(BorrowRequest request) {
         if (request == null) {
             throw new IllegalArgumentException("Request cannot be null");
         }
-        requests.put(request.getRequestId(), request);
+        Lock lock = requestLocks.forKey(request.getRequestId());
+        lock.lock();
+        try {
+            indexRequest(request);
+            changeLog.requestSaved(request);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Save an approved request together with the record it produced,
+     * so the indexes never show one without the other
+     */
+    public void saveApproval(BorrowRequest request, BorrowRecord record) {
+        if (request == null) {
+            throw new IllegalArgumentException("Request cannot be null");
+        }
+        if (record == null) {
+            throw new IllegalArgumentException("Record cannot be null");
+        }
+        Lock requestLock = requestLocks.forKey(request.getRequestId());
+        Lock recordLock = recordLocks.forKey(record.getRecordId());
+        requestLock.lock();
+        recordLock.lock();
+        try {
+            indexRequest(request);
+            indexRecord(record);
+            changeLog.requestSaved(request);
+            changeLog.recordSaved(record);
+        } finally {
+            recordLock.unlock();
+            requestLock.unlock();
+        }
+    }
+
+    private void indexRequest(BorrowRequest request) {
+        String requestId = request.getRequestId();
+        requests.put(requestId, request);
+        for (Map.Entry<BorrowRequest.Status, Map<String, BorrowRequest>> entry : requestsByStatus.entrySet()) {
+            if (entry.getKey() != request.getStatus()) {
+                entry.getValue().remove(requestId);
+            }
+        }
+        requestsByStatus.get(request.getStatus()).put(requestId, request);
+
+        // The bucket it was last filed under comes from pendingStartByRequest, since
+        // a request edited in place and saved again no longer shows its old date
+        LocalDate start = request.getStatus() == BorrowRequest.Status.PENDING ? request.getStartDate() : null;
+        LocalDate previous = start != null
+                ? pendingStartByRequest.put(requestId, start) : pendingStartByRequest.remove(requestId);
+        if (previous != null && !previous.equals(start)) {
+            removePending(previous, requestId);
+        }
+        if (start != null) {
+            pendingByStartDate.compute(start, (date, bucket) -> {
+                Map<String, BorrowRequest> result = bucket != null ? bucket : new ConcurrentHashMap<>();
+                result.put(requestId, request);
+                return result;
+            });
+        }
+    }
+
+    private void removePending(LocalDate startDate, String requestId) {
+        pendingByStartDate.computeIfPresent(startDate, (date, bucket) -> {
+            bucket.remove(requestId);
+            return bucket.isEmpty() ? null : bucket;
+        });
     }
 
     public Optional<BorrowRequest> findRequestById(String requestId) {
         return Optional.ofNullable(requests.get(requestId));
     }
 
+    /**
+     * Allocation-free lookup for internal callers; null if there is no such request
+     */
+    public BorrowRequest getRequest(String requestId) {
+        return requests.get(requestId);
+    }
+
+    /**
+     * Look up several requests at once; missing IDs are left out of the map
+     */
+    public Map<String, BorrowRequest> findRequestsByIds(Collection<String> requestIds) {
+        Map<String, BorrowRequest> result = new HashMap<>();
+        for (String requestId : requestIds) {
+            BorrowRequest request = requests.get(requestId);
+            if (request != null) {
+                result.put(requestId, request);
+            }
+        }
+        return result;
+    }
+
     public List<BorrowRequest> findAllRequests() {
-        return new ArrayList<>(requests.values());
+        return requests.values();
     }
 
     public List<BorrowRequest> findPendingRequests() {
-        return requests.values().stream()
-                .filter(req -> req.getStatus() == BorrowRequest.Status.PENDING)
-                .collect(Collectors.toList());
+        return new ArrayList<>(requestsByStatus.get(BorrowRequest.Status.PENDING).values());
     }
 
     public List<BorrowRequest> findRequestsForTodayOrYesterday() {
         LocalDate today = LocalDate.now();
-        LocalDate yesterday = today.minusDays(1);
-        
-        return requests.values().stream()
-                .filter(req -> req.getStatus() == BorrowRequest.Status.PENDING)
-                .filter(req -> {
-                    LocalDate start = req.getStartDate();
-                    return start.equals(today) || start.equals(yesterday);
-                })
-                .collect(Collectors.toList());
+        return findPendingRequestsBetween(today.minusDays(1), today);
+    }
+
+    /**
+     * Find pending requests whose start date falls in the given window (inclusive)
+     */
+    public List<BorrowRequest> findPendingRequestsBetween(LocalDate from, LocalDate to) {
+        List<BorrowRequest> result = new ArrayList<>();
+        if (from == null || to == null || to.isBefore(from)) {
+            return result;
+        }
+        for (Map<String, BorrowRequest> bucket : pendingByStartDate.subMap(from, true, to, true).values()) {
+            result.addAll(bucket.values());
+        }
+        return result;
     }
 
     public long countAllRequests() {
@@ -71,56 +251,460 @@ public class BorrowRepository {
         if (record == null) {
             throw new IllegalArgumentException("Record cannot be null");
         }
-        records.put(record.getRecordId(), record);
+        storeRecord(record);
+        archiveIfDue();
+    }
+
+    /**
+     * Save several records, checking the archive threshold once at the end
+     */
+    public void saveRecords(Collection<BorrowRecord> batch) {
+        for (BorrowRecord record : batch) {
+            if (record == null) {
+                throw new IllegalArgumentException("Record cannot be null");
+            }
+        }
+        for (BorrowRecord record : batch) {
+            storeRecord(record);
+        }
+        archiveIfDue();
+    }
+
+    private void storeRecord(BorrowRecord record) {
+        Lock lock = recordLocks.forKey(record.getRecordId());
+        lock.lock();
+        try {
+            indexRecord(record);
+            changeLog.recordSaved(record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean archiveDue() {
+        return records.size() - activeRecords.size() >= ARCHIVE_THRESHOLD;
+    }
+
+    /**
+     * Hand archiving to the background thread once enough returned records
+     * pile up, so the saving thread never writes the segment itself
+     */
+    private void archiveIfDue() {
+        if (archiveDue() && archiveScheduled.compareAndSet(false, true)) {
+            archiver.execute(() -> {
+                try {
+                    if (archiveDue()) {
+                        archiveReturnedRecords();
+                    }
+                } catch (UncheckedIOException e) {
+                    // The records stay on the heap; the next save past the threshold retries
+                } finally {
+                    archiveScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    private void indexRecord(BorrowRecord record) {
+        String recordId = record.getRecordId();
+        if (archiving) {
+            savedWhileArchiving.add(recordId);
+        }
+        boolean wasArchived = !records.containsKey(recordId) && coldRecords.contains(recordId);
+        records.put(recordId, record);
+        if (wasArchived) {
+            // An archived record that changes again comes back to the heap;
+            // it is on the heap before it leaves the cold tier, so walks never miss it
+            BorrowRecord archived = coldRecords.take(recordId);
+            if (archived != null) {
+                statistics.remember(archived);
+            }
+        }
+        indexKey(recordsByStudent, studentByRecord, record.getStudentUsername(), record);
+        indexKey(recordsByBook, bookByRecord, record.getBookId(), record);
+        if (record.isReturned()) {
+            activeRecords.remove(recordId);
+            overdueTracker.untrack(recordId);
+            loanCalendar.release(record);
+        } else {
+            activeRecords.put(recordId, record);
+            overdueTracker.track(record);
+            loanCalendar.track(record);
+        }
+        statistics.recordSaved(record);
+    }
+
+    /**
+     * File the record under its key, first leaving the bucket it was last
+     * filed under. The previous key comes from keyByRecord rather than the
+     * stored record, which is the same instance when a caller edits and
+     * saves a record again.
+     */
+    private static void indexKey(Map<String, Map<String, BorrowRecord>> index, Map<String, String> keyByRecord,
+                                 String key, BorrowRecord record) {
+        String previous = keyByRecord.put(record.getRecordId(), key);
+        if (previous != null && !previous.equals(key)) {
+            removeFrom(index, previous, record.getRecordId());
+        }
+        addTo(index, key, record);
+    }
+
+    private static void unindexKey(Map<String, Map<String, BorrowRecord>> index, Map<String, String> keyByRecord,
+                                   String recordId) {
+        String previous = keyByRecord.remove(recordId);
+        if (previous != null) {
+            removeFrom(index, previous, recordId);
+        }
+    }
+
+    private static void addTo(Map<String, Map<String, BorrowRecord>> index, String key, BorrowRecord record) {
+        index.compute(key, (k, bucket) -> {
+            Map<String, BorrowRecord> result = bucket != null ? bucket : new ConcurrentHashMap<>();
+            result.put(record.getRecordId(), record);
+            return result;
+        });
+    }
+
+    private static void removeFrom(Map<String, Map<String, BorrowRecord>> index, String key, String recordId) {
+        index.computeIfPresent(key, (k, bucket) -> {
+            bucket.remove(recordId);
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+
+    /**
+     * Move every returned record from the heap to a new cold-tier segment.
+     * The segment is written while saves continue; saves are only held back
+     * while it is swapped in and the heap copies are dropped. Records saved
+     * again in the meantime stay on the heap. Archived records are still
+     * found by every query, as fresh copies; saving one again brings it back
+     * to the heap.
+     */
+    public int archiveReturnedRecords() {
+        archiveLock.lock();
+        try {
+            archiving = true;
+            // Saves that missed the flag finish before the records are read
+            recordLocks.lockAll();
+            recordLocks.unlockAll();
+            List<BorrowRecord> returned = new ArrayList<>();
+            for (BorrowRecord record : records.values()) {
+                if (!activeRecords.containsKey(record.getRecordId())) {
+                    returned.add(record);
+                }
+            }
+            if (returned.isEmpty()) {
+                return 0;
+            }
+            RecordSegment segment = coldRecords.prepare(returned);
+
+            recordLocks.lockAll();
+            try {
+                coldRecords.publish(segment, savedWhileArchiving);
+                int archived = 0;
+                for (BorrowRecord record : returned) {
+                    String recordId = record.getRecordId();
+                    if (savedWhileArchiving.contains(recordId)) {
+                        continue;
+                    }
+                    records.remove(recordId);
+                    unindexKey(recordsByStudent, studentByRecord, recordId);
+                    unindexKey(recordsByBook, bookByRecord, recordId);
+                    statistics.forget(recordId);
+                    archived++;
+                }
+                return archived;
+            } finally {
+                recordLocks.unlockAll();
+            }
+        } finally {
+            archiving = false;
+            savedWhileArchiving.clear();
+            archiveLock.unlock();
+        }
+    }
+
+    public long countArchivedRecords() {
+        return coldRecords.size();
     }
 
     public Optional<BorrowRecord> findRecordById(String recordId) {
-        return Optional.ofNullable(records.get(recordId));
+        return Optional.ofNullable(getRecord(recordId));
+    }
+
+    /**
+     * Lookup for internal callers without the Optional; null if there is no
+     * such record. Only archived records are materialized.
+     */
+    public BorrowRecord getRecord(String recordId) {
+        BorrowRecord record = records.get(recordId);
+        return record != null ? record : coldRecords.find(recordId);
+    }
+
+    /**
+     * Look up several records at once; missing IDs are left out of the map
+     */
+    public Map<String, BorrowRecord> findRecordsByIds(Collection<String> recordIds) {
+        Map<String, BorrowRecord> result = new HashMap<>();
+        for (String recordId : recordIds) {
+            BorrowRecord record = records.get(recordId);
+            if (record == null) {
+                record = coldRecords.find(recordId);
+            }
+            if (record != null) {
+                result.put(recordId, record);
+            }
+        }
+        return result;
     }
 
     public List<BorrowRecord> findAllRecords() {
-        return new ArrayList<>(records.values());
+        List<BorrowRecord> result = new ArrayList<>();
+        forEachRecord(result::add);
+        return result;
+    }
+
+    /**
+     * Visit every record once, archived ones first, without building a list.
+     * Archived records are materialized one at a time; the action must not
+     * save records. No segment is published or shrunk during the walk, so a
+     * record moving between the tiers is seen in exactly one of them.
+     */
+    public void forEachRecord(Consumer<? super BorrowRecord> action) {
+        coldRecords.whileReadLocked(() -> {
+            coldRecords.forEach(action);
+            records.forEach(record -> {
+                if (!coldRecords.contains(record.getRecordId())) {
+                    action.accept(record);
+                }
+            });
+        });
+    }
+
+    /**
+     * Visit every request without copying the request map; the action must not save requests
+     */
+    public void forEachRequest(Consumer<? super BorrowRequest> action) {
+        requests.forEach(action);
+    }
+
+    /**
+     * Weakly consistent stream over the requests, without copying the request map
+     */
+    public Stream<BorrowRequest> streamRequests() {
+        return requests.stream();
+    }
+
+    public long countAllRecords() {
+        return records.size() + coldRecords.size();
+    }
+
+    /**
+     * Visit every returned record with a return date, reading archived
+     * records straight from their columns
+     */
+    public void visitReturnedRecords(ReturnedRecordVisitor visitor) {
+        coldRecords.whileReadLocked(() -> {
+            coldRecords.visitReturned(visitor);
+            records.forEach(record -> {
+                if (!coldRecords.contains(record.getRecordId())) {
+                    visitIfReturned(record, visitor);
+                }
+            });
+        });
+    }
+
+    private static void visitIfReturned(BorrowRecord record, ReturnedRecordVisitor visitor) {
+        if (record.isReturned() && record.getActualReturnDate() != null
+                && record.getStartDate() != null && record.getExpectedReturnDate() != null) {
+            visitor.visit(record.getStudentUsername(), record.getBookId(),
+                    record.getStartDate().toEpochDay(),
+                    record.getExpectedReturnDate().toEpochDay(),
+                    record.getActualReturnDate().toLocalDate().toEpochDay());
+        }
+    }
+
+    /**
+     * Aggregate every returned record in parallel on the common fork/join pool.
+     * Each cold-tier slice and each partition of the heap records is scanned
+     * into its own accumulator from the supplier; the combiner merges them
+     * pairwise. The accumulators see the same records visitReturnedRecords would.
+     */
+    public <A extends ReturnedRecordVisitor> A aggregateReturnedRecords(Supplier<A> supplier,
+                                                                       BinaryOperator<A> combiner) {
+        return coldRecords.withReturnedPartitions(COLD_PARTITION_ROWS, coldPartitions -> {
+            List<RecordPartition> partitions = new ArrayList<>(coldPartitions);
+            for (int i = 0; i < records.partitionCount(); i++) {
+                int partition = i;
+                partitions.add(visitor -> records.forEachInPartition(partition,
+                        record -> visitIfReturned(record, visitor)));
+            }
+            return ForkJoinPool.commonPool().invoke(
+                    new AggregationTask<>(partitions, 0, partitions.size(), supplier, combiner));
+        });
+    }
+
+    private static final class AggregationTask<A extends ReturnedRecordVisitor> extends RecursiveTask<A> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<RecordPartition> partitions;
+        private final int from;
+        private final int to;
+        private final Supplier<A> supplier;
+        private final BinaryOperator<A> combiner;
+
+        AggregationTask(List<RecordPartition> partitions, int from, int to,
+                        Supplier<A> supplier, BinaryOperator<A> combiner) {
+            this.partitions = partitions;
+            this.from = from;
+            this.to = to;
+            this.supplier = supplier;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from <= 1) {
+                A accumulator = supplier.get();
+                if (from < to) {
+                    partitions.get(from).visitReturned(accumulator);
+                }
+                return accumulator;
+            }
+            int middle = (from + to) >>> 1;
+            AggregationTask<A> left = new AggregationTask<>(partitions, from, middle, supplier, combiner);
+            left.fork();
+            A right = new AggregationTask<>(partitions, middle, to, supplier, combiner).compute();
+            return combiner.apply(left.join(), right);
+        }
+    }
+
+    /**
+     * Running statistics over all saved records
+     */
+    public BorrowStatistics getStatistics() {
+        return statistics;
     }
 
     public List<BorrowRecord> findRecordsByStudent(String studentUsername) {
-        return records.values().stream()
-                .filter(record -> record.getStudentUsername().equals(studentUsername))
-                .collect(Collectors.toList());
+        List<BorrowRecord> result = new ArrayList<>();
+        coldRecords.readByStudent(studentUsername, result);
+        Map<String, BorrowRecord> studentRecords = recordsByStudent.get(studentUsername);
+        if (studentRecords != null) {
+            result.addAll(studentRecords.values());
+        }
+        return result;
     }
 
     public List<BorrowRecord> findRecordsByBook(String bookId) {
-        return records.values().stream()
-                .filter(record -> record.getBookId().equals(bookId))
-                .collect(Collectors.toList());
+        List<BorrowRecord> result = new ArrayList<>();
+        coldRecords.readByBook(bookId, result);
+        Map<String, BorrowRecord> bookRecords = recordsByBook.get(bookId);
+        if (bookRecords != null) {
+            result.addAll(bookRecords.values());
+        }
+        return result;
     }
 
     public List<BorrowRecord> findActiveRecords() {
-        return records.values().stream()
-                .filter(record -> !record.isReturned())
-                .collect(Collectors.toList());
+        return new ArrayList<>(activeRecords.values());
     }
 
     public long countActiveRecords() {
-        return records.values().stream()
-                .filter(record -> !record.isReturned())
-                .count();
+        return activeRecords.size();
+    }
+
+    /**
+     * Count unreturned records whose expected return date is before the given day
+     */
+    public long countOverdueRecords(LocalDate today) {
+        return overdueTracker.overdueCount(today);
+    }
+
+    /**
+     * Find the most overdue unreturned records, up to the given limit
+     */
+    public List<BorrowRecord> findOverdueRecords(LocalDate today, int limit) {
+        return overdueTracker.nextOverdue(today, limit);
+    }
+
+    /**
+     * Commit the loan window of a record about to be approved and mark the
+     * book as lent. Returns false, changing nothing, if the window overlaps
+     * another unreturned loan of the book or the book is out of circulation.
+     */
+    public boolean reserveLoan(Book book, BorrowRecord record) {
+        return loanCalendar.reserve(book, record);
+    }
+
+    /**
+     * Mark a book available again once none of its loans are outstanding;
+     * returns true if the book changed
+     */
+    public boolean releaseBookIfFree(Book book) {
+        return loanCalendar.releaseBookIfFree(book);
     }
 
+    public boolean hasActiveLoans(String bookId) {
+        return loanCalendar.hasLoans(bookId);
+    }
+
+    /**
+     * Find the earliest unreturned loan of the book whose window overlaps the given dates
+     */
+    public Optional<BorrowRecord> findConflictingLoan(String bookId, LocalDate startDate, LocalDate endDate) {
+        String recordId = loanCalendar.findConflict(bookId, startDate, endDate);
+        return Optional.ofNullable(recordId == null ? null : activeRecords.get(recordId));
+    }
+
+    /**
+     * Earliest start date on or after the given day with no loan of the book
+     * in the following number of days
+     */
+    public LocalDate findEarliestFreeStart(String bookId, LocalDate from, int days) {
+        return loanCalendar.findFreeStart(bookId, from, Math.max(days, 1));
+    }
+
+    /**
+     * Records lent by the staff member, including archived ones, from the activity index
+     */
     public long countRecordsByLentBy(String staffUsername) {
-        return records.values().stream()
-                .filter(record -> record.getLentBy().equals(staffUsername))
-                .count();
+        return statistics.getBooksLent(staffUsername);
     }
 
+    /**
+     * Records received back by the staff member, from the activity index
+     */
     public long countRecordsByReceivedBy(String staffUsername) {
-        return records.values().stream()
-                .filter(record -> record.getReceivedBy() != null &&
-                        record.getReceivedBy().equals(staffUsername))
-                .count();
+        return statistics.getBooksReceived(staffUsername);
     }
 
     public void clear() {
-        requests.clear();
-        records.clear();
+        archiveLock.lock();
+        requestLocks.lockAll();
+        recordLocks.lockAll();
+        try {
+            requests.clear();
+            records.clear();
+            for (Map<String, BorrowRequest> bucket : requestsByStatus.values()) {
+                bucket.clear();
+            }
+            pendingByStartDate.clear();
+            pendingStartByRequest.clear();
+            recordsByStudent.clear();
+            recordsByBook.clear();
+            studentByRecord.clear();
+            bookByRecord.clear();
+            activeRecords.clear();
+            overdueTracker.clear();
+            loanCalendar.clear();
+            statistics.clear();
+            coldRecords.clear();
+            changeLog.borrowsCleared();
+        } finally {
+            recordLocks.unlockAll();
+            requestLocks.unlockAll();
+            archiveLock.unlock();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,200 @@
+package ir.university.library.repository;
+
+import ir.university.library.model.BorrowRecord;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running borrow statistics maintained by BorrowRepository.
+ * Every saved record replaces its previous contribution, so the totals
+ * stay exact even when a record is edited after it was first counted.
+ * The staff lent and received counts in its StaffActivityIndex follow the same way.
+ * There is no global lock: the repository serializes saves of one record,
+ * each student's totals change inside one atomic map update, and the overall
+ * totals are adders, so reads are weakly consistent with each other.
+ */
+public class BorrowStatistics {
+    private final Map<String, Contribution> contributions;
+    private final Map<String, StudentTotals> studentTotals;
+    private final DelayRanking delayRanking;
+    private final StaffActivityIndex staffActivity;
+    private final LongAdder totalRecords;
+    private final LongAdder returnedRecords;
+    private final LongAdder durationSum;
+
+    BorrowStatistics() {
+        this.contributions = new ConcurrentHashMap<>();
+        this.studentTotals = new ConcurrentHashMap<>();
+        this.delayRanking = new DelayRanking();
+        this.staffActivity = new StaffActivityIndex();
+        this.totalRecords = new LongAdder();
+        this.returnedRecords = new LongAdder();
+        this.durationSum = new LongAdder();
+    }
+
+    void recordSaved(BorrowRecord record) {
+        Contribution current = new Contribution(record);
+        Contribution previous = contributions.put(record.getRecordId(), current);
+        if (previous == null) {
+            totalRecords.increment();
+            updateStudent(current.studentUsername, null, current);
+        } else if (previous.studentUsername.equals(current.studentUsername)) {
+            apply(previous, -1);
+            updateStudent(current.studentUsername, previous, current);
+        } else {
+            apply(previous, -1);
+            updateStudent(previous.studentUsername, previous, null);
+            updateStudent(current.studentUsername, null, current);
+        }
+        apply(current, 1);
+    }
+
+    private void apply(Contribution contribution, int sign) {
+        staffActivity.addLent(contribution.lentBy, sign);
+        staffActivity.addReceived(contribution.receivedBy, sign);
+        if (contribution.returned) {
+            returnedRecords.add(sign);
+            durationSum.add(sign * contribution.duration);
+        }
+    }
+
+    /**
+     * Swap one record's contribution in a student's totals atomically;
+     * either side may be null
+     */
+    private void updateStudent(String studentUsername, Contribution removed, Contribution added) {
+        studentTotals.compute(studentUsername, (k, totals) -> {
+            StudentTotals result = totals != null ? totals : new StudentTotals();
+            if (removed != null) {
+                result.add(removed, -1);
+            }
+            if (added != null) {
+                result.add(added, 1);
+            }
+            if ((removed != null && removed.late) || (added != null && added.late)) {
+                delayRanking.update(studentUsername, result.borrows == 0 ? 0 : result.delayDays);
+            }
+            return result.borrows == 0 ? null : result;
+        });
+    }
+
+    /**
+     * Stop tracking a record's contribution while keeping it in the totals;
+     * used once the record moves to the cold tier and can no longer change
+     */
+    void forget(String recordId) {
+        contributions.remove(recordId);
+    }
+
+    /**
+     * Track the contribution of a record that is already in the totals,
+     * so it can be replaced when the record is edited again
+     */
+    void remember(BorrowRecord record) {
+        contributions.put(record.getRecordId(), new Contribution(record));
+    }
+
+    /**
+     * Reset everything; the repository holds off saves while this runs
+     */
+    void clear() {
+        contributions.clear();
+        studentTotals.clear();
+        delayRanking.clear();
+        staffActivity.clear();
+        totalRecords.reset();
+        returnedRecords.reset();
+        durationSum.reset();
+    }
+
+    long getBooksLent(String staffUsername) {
+        return staffActivity.getBooksLent(staffUsername);
+    }
+
+    long getBooksReceived(String staffUsername) {
+        return staffActivity.getBooksReceived(staffUsername);
+    }
+
+    public long getTotalRecords() {
+        return totalRecords.sum();
+    }
+
+    public long getReturnedRecords() {
+        return returnedRecords.sum();
+    }
+
+    /**
+     * Average borrow duration in days over returned records (0 if none)
+     */
+    public double getAverageBorrowDuration() {
+        long returned = returnedRecords.sum();
+        return returned == 0 ? 0.0 : (double) durationSum.sum() / returned;
+    }
+
+    public long getStudentBorrowCount(String studentUsername) {
+        StudentTotals totals = studentTotals.get(studentUsername);
+        return totals == null ? 0 : totals.borrows;
+    }
+
+    public long getStudentNotReturnedCount(String studentUsername) {
+        StudentTotals totals = studentTotals.get(studentUsername);
+        return totals == null ? 0 : totals.notReturned;
+    }
+
+    public long getStudentLateReturnCount(String studentUsername) {
+        StudentTotals totals = studentTotals.get(studentUsername);
+        return totals == null ? 0 : totals.lateReturns;
+    }
+
+    /**
+     * The k students with the most total delay days, ties ordered by
+     * username or by the given comparator
+     */
+    public List<Map.Entry<String, Long>> getTopDelayedStudents(int k,
+            Comparator<String> tieBreaker) {
+        return delayRanking.top(k, tieBreaker);
+    }
+
+    private static class Contribution {
+        final String studentUsername;
+        final String lentBy;
+        final String receivedBy;
+        final boolean returned;
+        final boolean late;
+        final long duration;
+        final long delayDays;
+
+        Contribution(BorrowRecord record) {
+            this.studentUsername = record.getStudentUsername();
+            this.lentBy = record.getLentBy();
+            this.receivedBy = record.getReceivedBy();
+            this.returned = record.isReturned();
+            this.late = record.isReturnedLate();
+            this.duration = record.getBorrowDuration();
+            this.delayDays = record.getDelayDays();
+        }
+    }
+
+    /**
+     * Changed only inside the student's map update, read without locking
+     */
+    private static class StudentTotals {
+        volatile long borrows;
+        volatile long notReturned;
+        volatile long lateReturns;
+        volatile long delayDays;
+
+        void add(Contribution contribution, int sign) {
+            borrows += sign;
+            if (!contribution.returned) {
+                notReturned += sign;
+            }
+            if (contribution.late) {
+                lateReturns += sign;
+                delayDays += sign * contribution.delayDays;
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ir.university.library.repository;
+
+import ir.university.library.model.*;
+
+/**
+ * Receives every mutation applied to the repositories, in order.
+ * Used by the persistence layer to write them to durable storage.
+ */
+public interface ChangeLog {
+    ChangeLog NONE = new ChangeLog() {
+    };
+
+    default void bookSaved(Book book) {
+    }
+
+    default void bookDeleted(String bookId) {
+    }
+
+    default void booksCleared() {
+    }
+
+    default void userSaved(User user) {
+    }
+
+    default void userDeleted(String username) {
+    }
+
+    default void usersCleared() {
+    }
+
+    default void requestSaved(BorrowRequest request) {
+    }
+
+    default void recordSaved(BorrowRecord record) {
+    }
+
+    default void borrowsCleared() {
+    }
+
+    /**
+     * Block until every change received so far is durable
+     */
+    default void sync() {
+    }
+}
@@ -0,0 +1,255 @@
+package ir.university.library.repository;
+
+import ir.university.library.model.BorrowRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Cold tier for returned borrow records.
+ * Records are written in batches to memory-mapped columnar segments that
+ * share one dictionary for usernames and one for book IDs, so the heap only
+ * holds the dictionaries and a few offsets per segment.
+ * Segments are written outside the lock and swapped in under the write lock;
+ * queries share the read lock.
+ * The tier is not durable: segments are scratch files in a temporary
+ * directory, removed on exit. The change log and snapshots still hold every
+ * record, so recovery rebuilds the records on the heap and they are archived
+ * again from there.
+ */
+class ColdRecordStore {
+    private final StringDictionary users;
+    private final StringDictionary books;
+    private final List<RecordSegment> segments;
+    private final ReadWriteLock lock;
+    private Path directory;
+    private long nextSegment;
+    private volatile long size;
+
+    ColdRecordStore() {
+        this.users = new StringDictionary();
+        this.books = new StringDictionary();
+        this.segments = new ArrayList<>();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Write the given returned records to a new segment without publishing it;
+     * calls are serialized by the caller, and queries keep running meanwhile
+     */
+    RecordSegment prepare(List<BorrowRecord> records) {
+        try {
+            if (directory == null) {
+                directory = Files.createTempDirectory("borrow-archive");
+                directory.toFile().deleteOnExit();
+            }
+            Path file = directory.resolve(String.format("records-%08d.col", nextSegment++));
+            RecordSegment segment = RecordSegment.write(file, records, users, books);
+            file.toFile().deleteOnExit();
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write record segment", e);
+        }
+    }
+
+    /**
+     * Make a prepared segment visible, masking the rows of records that were
+     * saved again while it was written and so stay on the heap
+     */
+    void publish(RecordSegment segment, Collection<String> keptOnHeap) {
+        int live = segment.rowCount();
+        for (String recordId : keptOnHeap) {
+            int row = segment.find(recordId);
+            if (row >= 0) {
+                segment.remove(row);
+                live--;
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            segments.add(segment);
+            size += live;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Whether the record is archived here; only shares the read lock
+     */
+    boolean contains(String recordId) {
+        if (size == 0) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            for (RecordSegment segment : segments) {
+                if (segment.find(recordId) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    BorrowRecord find(String recordId) {
+        lock.readLock().lock();
+        try {
+            for (RecordSegment segment : segments) {
+                int row = segment.find(recordId);
+                if (row >= 0) {
+                    return segment.read(row, users, books);
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a record from the cold tier and return it, or null if it is not here
+     */
+    BorrowRecord take(String recordId) {
+        lock.writeLock().lock();
+        try {
+            for (RecordSegment segment : segments) {
+                int row = segment.find(recordId);
+                if (row >= 0) {
+                    BorrowRecord record = segment.read(row, users, books);
+                    segment.remove(row);
+                    size--;
+                    return record;
+                }
+            }
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Materialize archived records one at a time; the action must not
+     * write to the borrow repository
+     */
+    void forEach(Consumer<? super BorrowRecord> action) {
+        lock.readLock().lock();
+        try {
+            for (RecordSegment segment : segments) {
+                segment.forEach(action, users, books);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void readByStudent(String studentUsername, List<BorrowRecord> result) {
+        lock.readLock().lock();
+        try {
+            int code = users.lookup(studentUsername);
+            if (code == StringDictionary.NULL_CODE) {
+                return;
+            }
+            for (RecordSegment segment : segments) {
+                segment.readByStudent(code, result, users, books);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void readByBook(String bookId, List<BorrowRecord> result) {
+        lock.readLock().lock();
+        try {
+            int code = books.lookup(bookId);
+            if (code == StringDictionary.NULL_CODE) {
+                return;
+            }
+            for (RecordSegment segment : segments) {
+                segment.readByBook(code, result, users, books);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void visitReturned(ReturnedRecordVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (RecordSegment segment : segments) {
+                segment.visitReturned(visitor, users, books);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Split the returned rows into partitions of at most rowsPerPartition
+     * rows and run the body on them while holding the read lock, so no
+     * segment changes until the body returns
+     */
+    <T> T withReturnedPartitions(int rowsPerPartition, Function<List<RecordPartition>, T> body) {
+        lock.readLock().lock();
+        try {
+            List<RecordPartition> partitions = new ArrayList<>();
+            for (RecordSegment segment : segments) {
+                for (int from = 0; from < segment.rowCount(); from += rowsPerPartition) {
+                    int start = from;
+                    int end = Math.min(segment.rowCount(), from + rowsPerPartition);
+                    partitions.add(visitor -> segment.visitReturned(visitor, users, books, start, end));
+                }
+            }
+            return body.apply(partitions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Run the body holding the read lock, so no segment is published or
+     * shrunk until it returns; the other read methods may be called from it
+     */
+    void whileReadLocked(Runnable body) {
+        lock.readLock().lock();
+        try {
+            body.run();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            for (RecordSegment segment : segments) {
+                try {
+                    Files.deleteIfExists(segment.getFile());
+                } catch (IOException e) {
+                    // Still mapped on some platforms; removed on exit instead
+                }
+            }
+            segments.clear();
+            users.clear();
+            books.clear();
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ir.university.library.repository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Students ranked by total delay days, kept sorted as totals change.
+ * Ties are ordered by username unless a query asks for another order.
+ * Updates of one student must not overlap; queries run alongside updates
+ * and may briefly miss a student whose entry is being replaced.
+ */
+class DelayRanking {
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparingLong((Entry e) -> e.delayDays).reversed()
+            .thenComparing(e -> e.username);
+
+    private final NavigableSet<Entry> ranking;
+    private final Map<String, Entry> entries;
+
+    DelayRanking() {
+        this.ranking = new ConcurrentSkipListSet<>(ORDER);
+        this.entries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Set the total delay of a student; students with no delay are dropped
+     */
+    void update(String username, long delayDays) {
+        Entry previous = entries.remove(username);
+        if (previous != null) {
+            ranking.remove(previous);
+        }
+        if (delayDays > 0) {
+            Entry entry = new Entry(username, delayDays);
+            entries.put(username, entry);
+            ranking.add(entry);
+        }
+    }
+
+    /**
+     * The k students with the most delay days, ties broken by the given
+     * username order. Only the delay group that straddles position k
+     * needs sorting, so the cost does not depend on the number of students.
+     */
+    List<Map.Entry<String, Long>> top(int k, Comparator<String> tieBreaker) {
+        List<Map.Entry<String, Long>> result = new ArrayList<>();
+        if (k <= 0) {
+            return result;
+        }
+        List<String> group = new ArrayList<>();
+        long groupDelay = -1;
+        for (Entry entry : ranking) {
+            if (entry.delayDays != groupDelay) {
+                if (flush(group, groupDelay, tieBreaker, result, k)) {
+                    return result;
+                }
+                groupDelay = entry.delayDays;
+            }
+            group.add(entry.username);
+        }
+        flush(group, groupDelay, tieBreaker, result, k);
+        return result;
+    }
+
+    private static boolean flush(List<String> group, long delayDays, Comparator<String> tieBreaker,
+                                 List<Map.Entry<String, Long>> result, int k) {
+        if (tieBreaker != null && group.size() > 1) {
+            group.sort(tieBreaker);
+        }
+        for (String username : group) {
+            if (result.size() >= k) {
+                return true;
+            }
+            result.add(new AbstractMap.SimpleImmutableEntry<>(username, delayDays));
+        }
+        group.clear();
+        return result.size() >= k;
+    }
+
+    void clear() {
+        ranking.clear();
+        entries.clear();
+    }
+
+    private static class Entry {
+        final String username;
+        final long delayDays;
+
+        Entry(String username, long delayDays) {
+            this.username = username;
+            this.delayDays = delayDays;
+        }
+    }
+}
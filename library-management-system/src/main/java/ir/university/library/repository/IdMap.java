@@ -0,0 +1,119 @@
+package ir.university.library.repository;
+
+import ir.university.library.util.Ids;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Primary store for entities keyed by string ID.
+ * Generated IDs are parsed back to their long value and kept in a
+ * LongObjectMap; any other ID (imported or hand-made) goes to a plain
+ * ConcurrentHashMap, which stays empty in normal operation.
+ */
+class IdMap<V> {
+    private final LongObjectMap<V> numeric;
+    private final Map<String, V> other;
+
+    IdMap() {
+        this.numeric = new LongObjectMap<>();
+        this.other = new ConcurrentHashMap<>();
+    }
+
+    V get(String id) {
+        if (id == null) {
+            return null;
+        }
+        long key = Ids.parse(id);
+        return key > 0 ? numeric.get(key) : other.get(id);
+    }
+
+    /**
+     * The values present for the given IDs, skipping missing ones
+     */
+    List<V> getAll(Collection<String> ids) {
+        List<V> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            V value = get(id);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    boolean containsKey(String id) {
+        return get(id) != null;
+    }
+
+    V put(String id, V value) {
+        long key = Ids.parse(id);
+        return key > 0 ? numeric.put(key, value) : other.put(id, value);
+    }
+
+    V remove(String id) {
+        if (id == null) {
+            return null;
+        }
+        long key = Ids.parse(id);
+        return key > 0 ? numeric.remove(key) : other.remove(id);
+    }
+
+    int size() {
+        return numeric.size() + other.size();
+    }
+
+    /**
+     * Visit every value; the action must not write to this map
+     */
+    void forEach(Consumer<? super V> action) {
+        numeric.forEachValue(action);
+        other.values().forEach(action);
+    }
+
+    /**
+     * Number of disjoint partitions the values are stored in
+     */
+    int partitionCount() {
+        return numeric.segmentCount() + 1;
+    }
+
+    /**
+     * Visit the values of one partition; different partitions can be
+     * visited in parallel. The action must not write to this map.
+     */
+    void forEachInPartition(int partition, Consumer<? super V> action) {
+        if (partition < numeric.segmentCount()) {
+            numeric.forEachValueInSegment(partition, action);
+        } else {
+            other.values().forEach(action);
+        }
+    }
+
+    /**
+     * Weakly consistent stream over all values, without copying the map
+     */
+    Stream<V> stream() {
+        return Stream.concat(StreamSupport.stream(numeric.spliterator(), false), other.values().stream());
+    }
+
+    /**
+     * A copy of all values
+     */
+    List<V> values() {
+        List<V> result = new ArrayList<>(size());
+        forEach(result::add);
+        return result;
+    }
+
+    void clear() {
+        numeric.clear();
+        other.clear();
+    }
+}
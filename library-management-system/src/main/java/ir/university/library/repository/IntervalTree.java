@@ -0,0 +1,209 @@
+package ir.university.library.repository;
+
+/**
+ * An AVL tree of closed day intervals, ordered by start day and then by ID,
+ * where every node also keeps the latest end day in its subtree.
+ * That lets an overlap query skip any subtree that ends before the query
+ * starts, so finding the earliest overlapping interval takes O(log n).
+ * Not thread-safe; callers synchronize.
+ */
+class IntervalTree {
+
+    /**
+     * One stored interval; start and end are epoch days, both inclusive
+     */
+    static final class Interval {
+        final String id;
+        final long start;
+        final long end;
+
+        private Interval(String id, long start, long end) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class Node {
+        final Interval interval;
+        Node left;
+        Node right;
+        long maxEnd;
+        int height;
+
+        Node(Interval interval) {
+            this.interval = interval;
+            this.maxEnd = interval.end;
+            this.height = 1;
+        }
+    }
+
+    private Node root;
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void insert(String id, long start, long end) {
+        root = insert(root, new Interval(id, start, end));
+        size++;
+    }
+
+    /**
+     * Remove the interval with this ID and start day; returns false if absent
+     */
+    boolean remove(String id, long start) {
+        int before = size;
+        root = remove(root, id, start);
+        return size < before;
+    }
+
+    /**
+     * The interval with the earliest start that overlaps [start, end], or null
+     */
+    Interval findFirstOverlap(long start, long end) {
+        Node node = root;
+        while (node != null) {
+            if (node.left != null && node.left.maxEnd >= start) {
+                // If the left subtree has no overlap, nothing to the right does either
+                node = node.left;
+            } else if (node.interval.start <= end && node.interval.end >= start) {
+                return node.interval;
+            } else if (node.interval.start > end) {
+                return null;
+            } else {
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The earliest day on or after from that starts a free run of the given
+     * length; each step jumps past one blocking interval
+     */
+    long findFreeStart(long from, long length) {
+        long candidate = from;
+        Interval blocking;
+        while ((blocking = findFirstOverlap(candidate, candidate + length - 1)) != null) {
+            candidate = blocking.end + 1;
+        }
+        return candidate;
+    }
+
+    void clear() {
+        root = null;
+        size = 0;
+    }
+
+    private static int compare(Interval interval, long start, String id) {
+        int result = Long.compare(interval.start, start);
+        return result != 0 ? result : interval.id.compareTo(id);
+    }
+
+    private static Node insert(Node node, Interval interval) {
+        if (node == null) {
+            return new Node(interval);
+        }
+        if (compare(interval, node.interval.start, node.interval.id) < 0) {
+            node.left = insert(node.left, interval);
+        } else {
+            node.right = insert(node.right, interval);
+        }
+        return balance(node);
+    }
+
+    private Node remove(Node node, String id, long start) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(node.interval, start, id);
+        if (cmp > 0) {
+            node.left = remove(node.left, id, start);
+        } else if (cmp < 0) {
+            node.right = remove(node.right, id, start);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            Node replacement = new Node(successor.interval);
+            replacement.right = removeMin(node.right);
+            replacement.left = node.left;
+            return balance(replacement);
+        }
+        return balance(node);
+    }
+
+    private static Node removeMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeMin(node.left);
+        return balance(node);
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static void update(Node node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        long maxEnd = node.interval.end;
+        if (node.left != null) {
+            maxEnd = Math.max(maxEnd, node.left.maxEnd);
+        }
+        if (node.right != null) {
+            maxEnd = Math.max(maxEnd, node.right.maxEnd);
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private static Node balance(Node node) {
+        update(node);
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+}
@@ -0,0 +1,182 @@
+package ir.university.library.repository;
+
+import ir.university.library.model.Book;
+import ir.university.library.model.BorrowRecord;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The committed loan windows of every book: one interval tree per book
+ * holding the start and expected return day of each unreturned record.
+ * Each book's tree is guarded by its own monitor, so a reservation checks
+ * for overlap and commits its window in one step. A book's entry is dropped
+ * as soon as its tree is empty, so books that were lent once cost nothing.
+ * A book counts as lent from the first day of a loan until it is returned;
+ * loans that only start later leave it available until then.
+ */
+class LoanCalendar {
+
+    private static final class BookLoans {
+        final IntervalTree windows = new IntervalTree();
+        final Map<String, Long> startByRecord = new HashMap<>();
+        boolean dropped;
+
+        /**
+         * Whether a loan has started on or before the day, so the book is out
+         */
+        boolean lentOn(long day) {
+            return windows.findFirstOverlap(Long.MIN_VALUE, day) != null;
+        }
+    }
+
+    private final Map<String, BookLoans> loansByBook;
+
+    LoanCalendar() {
+        this.loansByBook = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Commit the record's window unless it overlaps another one, and mark
+     * the book as lent if the window has already started. A book that is
+     * unavailable while no loan has started has been taken out of
+     * circulation, so it cannot be reserved.
+     */
+    boolean reserve(Book book, BorrowRecord record) {
+        long today = LocalDate.now().toEpochDay();
+        return withLoans(book.getBookId(), loans -> {
+            long start = record.getStartDate().toEpochDay();
+            long end = record.getExpectedReturnDate().toEpochDay();
+            if (!book.isAvailable() && !loans.lentOn(today)) {
+                return false;
+            }
+            if (!loans.startByRecord.containsKey(record.getRecordId())) {
+                if (loans.windows.findFirstOverlap(start, end) != null) {
+                    return false;
+                }
+                loans.windows.insert(record.getRecordId(), start, end);
+                loans.startByRecord.put(record.getRecordId(), start);
+            }
+            if (start <= today) {
+                book.compareAndSetAvailable(true, false);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Index an unreturned record's window without checking for overlap,
+     * as when records are loaded or edited directly
+     */
+    void track(BorrowRecord record) {
+        if (record.getStartDate() == null || record.getExpectedReturnDate() == null) {
+            return;
+        }
+        withLoans(record.getBookId(), loans -> {
+            String recordId = record.getRecordId();
+            long start = record.getStartDate().toEpochDay();
+            Long previous = loans.startByRecord.put(recordId, start);
+            if (previous != null) {
+                loans.windows.remove(recordId, previous);
+            }
+            loans.windows.insert(recordId, start, record.getExpectedReturnDate().toEpochDay());
+            return null;
+        });
+    }
+
+    void release(BorrowRecord record) {
+        BookLoans loans = loansByBook.get(record.getBookId());
+        if (loans == null) {
+            return;
+        }
+        synchronized (loans) {
+            Long start = loans.startByRecord.remove(record.getRecordId());
+            if (start != null) {
+                loans.windows.remove(record.getRecordId(), start);
+            }
+            dropIfEmpty(record.getBookId(), loans);
+        }
+    }
+
+    /**
+     * Mark the book available again if no started loan is left; loans that
+     * start later do not hold it. Runs under the book's monitor, so it
+     * cannot undo a reservation made after the last return.
+     */
+    boolean releaseBookIfFree(Book book) {
+        long today = LocalDate.now().toEpochDay();
+        return withLoans(book.getBookId(),
+                loans -> !loans.lentOn(today) && book.compareAndSetAvailable(false, true));
+    }
+
+    boolean hasLoans(String bookId) {
+        BookLoans loans = loansByBook.get(bookId);
+        if (loans == null) {
+            return false;
+        }
+        synchronized (loans) {
+            return !loans.windows.isEmpty();
+        }
+    }
+
+    /**
+     * ID of the earliest committed window overlapping [start, end], or null
+     */
+    String findConflict(String bookId, LocalDate start, LocalDate end) {
+        BookLoans loans = loansByBook.get(bookId);
+        if (loans == null) {
+            return null;
+        }
+        synchronized (loans) {
+            IntervalTree.Interval conflict = loans.windows.findFirstOverlap(start.toEpochDay(), end.toEpochDay());
+            return conflict == null ? null : conflict.id;
+        }
+    }
+
+    LocalDate findFreeStart(String bookId, LocalDate from, int days) {
+        BookLoans loans = loansByBook.get(bookId);
+        if (loans == null) {
+            return from;
+        }
+        synchronized (loans) {
+            return LocalDate.ofEpochDay(loans.windows.findFreeStart(from.toEpochDay(), days));
+        }
+    }
+
+    void clear() {
+        loansByBook.clear();
+    }
+
+    /**
+     * Run the body under the monitor of the book's entry, creating it if
+     * needed and dropping it afterwards if its tree is empty. An entry found
+     * already dropped by another thread is replaced by a fresh one.
+     */
+    private <T> T withLoans(String bookId, Function<BookLoans, T> body) {
+        while (true) {
+            BookLoans loans = loansByBook.computeIfAbsent(bookId, id -> new BookLoans());
+            synchronized (loans) {
+                if (loans.dropped) {
+                    continue;
+                }
+                T result = body.apply(loans);
+                dropIfEmpty(bookId, loans);
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Drop the book's entry if its tree is empty; the caller holds its monitor
+     */
+    private void dropIfEmpty(String bookId, BookLoans loans) {
+        if (loans.windows.isEmpty() && !loans.dropped) {
+            loans.dropped = true;
+            loansByBook.remove(bookId, loans);
+        }
+    }
+
+}
@@ -0,0 +1,339 @@
+package ir.university.library.repository;
+
+import java.util.Spliterator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * A concurrent map from positive long keys to objects without boxing.
+ * Keys are spread over segments, each an open-addressing table with linear
+ * probing guarded by its own StampedLock. Lookups are optimistic reads that
+ * only fall back to the read lock if a write to the same segment overlapped.
+ */
+class LongObjectMap<V> {
+    private static final long EMPTY = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Keys and values are swapped together on resize, so an optimistic reader
+     * never pairs a key array with the wrong value array
+     */
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+
+    private static final class Segment {
+        final StampedLock lock = new StampedLock();
+        volatile Table table = new Table(INITIAL_CAPACITY);
+        // Written under the write lock, read without it
+        volatile int size;
+    }
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    LongObjectMap() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    LongObjectMap(int segmentCount) {
+        int count = Integer.highestOneBit(Math.max(1, segmentCount - 1)) << 1;
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private Segment segmentFor(long hash) {
+        // High bits pick the segment, low bits the slot, so the two stay independent
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        checkKey(key);
+        long hash = mix(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Object value = find(segment.table, key, hash);
+            if (segment.lock.validate(stamp)) {
+                return (V) value;
+            }
+        }
+        stamp = segment.lock.readLock();
+        try {
+            return (V) find(segment.table, key, hash);
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    private static Object find(Table table, long key, long hash) {
+        long[] keys = table.keys;
+        int mask = keys.length - 1;
+        int index = (int) hash & mask;
+        // Bounded so a reader racing a writer cannot spin; validation catches it
+        for (int probes = 0; probes < keys.length; probes++) {
+            long current = keys[index];
+            if (current == key) {
+                return table.values[index];
+            }
+            if (current == EMPTY) {
+                return null;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        checkKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        long hash = mix(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            int mask = table.keys.length - 1;
+            int index = (int) hash & mask;
+            while (table.keys[index] != EMPTY) {
+                if (table.keys[index] == key) {
+                    Object previous = table.values[index];
+                    table.values[index] = value;
+                    return (V) previous;
+                }
+                index = (index + 1) & mask;
+            }
+            table.keys[index] = key;
+            table.values[index] = value;
+            segment.size++;
+            if (segment.size * 4 > table.keys.length * 3) {
+                segment.table = resize(table);
+            }
+            return null;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    private static Table resize(Table old) {
+        Table table = new Table(old.keys.length * 2);
+        int mask = table.keys.length - 1;
+        for (int i = 0; i < old.keys.length; i++) {
+            long key = old.keys[i];
+            if (key != EMPTY) {
+                int index = (int) mix(key) & mask;
+                while (table.keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                table.keys[index] = key;
+                table.values[index] = old.values[i];
+            }
+        }
+        return table;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        checkKey(key);
+        long hash = mix(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            Table table = segment.table;
+            long[] keys = table.keys;
+            Object[] values = table.values;
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            while (keys[index] != key) {
+                if (keys[index] == EMPTY) {
+                    return null;
+                }
+                index = (index + 1) & mask;
+            }
+            Object previous = values[index];
+            // Shift later entries of the probe run back instead of leaving a tombstone
+            int gap = index;
+            int next = (gap + 1) & mask;
+            while (keys[next] != EMPTY) {
+                int home = (int) mix(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    gap = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[gap] = EMPTY;
+            values[gap] = null;
+            segment.size--;
+            return (V) previous;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sum of the segment sizes; exact when no write is in progress
+     */
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Visit every value. Each segment is read under its read lock, so
+     * the action must not write to this map.
+     */
+    void forEachValue(Consumer<? super V> action) {
+        for (int i = 0; i < segments.length; i++) {
+            forEachValueInSegment(i, action);
+        }
+    }
+
+    int segmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Visit the values of one segment under its read lock; segments can be
+     * visited from different threads at once
+     */
+    @SuppressWarnings("unchecked")
+    void forEachValueInSegment(int index, Consumer<? super V> action) {
+        Segment segment = segments[index];
+        long stamp = segment.lock.readLock();
+        try {
+            for (Object value : segment.table.values) {
+                if (value != null) {
+                    action.accept((V) value);
+                }
+            }
+        } finally {
+            segment.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Weakly consistent spliterator over the values. It copies one segment's
+     * values at a time under that segment's read lock and splits by segment.
+     */
+    Spliterator<V> spliterator() {
+        return new SegmentSpliterator(0, segments.length);
+    }
+
+    private final class SegmentSpliterator implements Spliterator<V> {
+        private int nextSegment;
+        private final int endSegment;
+        private Object[] buffer = new Object[0];
+        private int bufferIndex;
+        private int bufferSize;
+
+        SegmentSpliterator(int fromSegment, int endSegment) {
+            this.nextSegment = fromSegment;
+            this.endSegment = endSegment;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super V> action) {
+            while (bufferIndex == bufferSize) {
+                if (nextSegment == endSegment) {
+                    return false;
+                }
+                fill(segments[nextSegment++]);
+            }
+            Object value = buffer[bufferIndex];
+            buffer[bufferIndex++] = null;
+            action.accept((V) value);
+            return true;
+        }
+
+        private void fill(Segment segment) {
+            long stamp = segment.lock.readLock();
+            try {
+                Object[] values = segment.table.values;
+                if (buffer.length < segment.size) {
+                    buffer = new Object[segment.size];
+                }
+                int size = 0;
+                for (Object value : values) {
+                    if (value != null) {
+                        buffer[size++] = value;
+                    }
+                }
+                bufferSize = size;
+                bufferIndex = 0;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            int remaining = endSegment - nextSegment;
+            if (remaining < 2) {
+                return null;
+            }
+            int middle = nextSegment + remaining / 2;
+            Spliterator<V> prefix = new SegmentSpliterator(nextSegment, middle);
+            nextSegment = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = bufferSize - bufferIndex;
+            for (int i = nextSegment; i < endSegment; i++) {
+                size += segments[i].size;
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return NONNULL | CONCURRENT;
+        }
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            long stamp = segment.lock.writeLock();
+            try {
+                segment.table = new Table(INITIAL_CAPACITY);
+                segment.size = 0;
+            } finally {
+                segment.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private static void checkKey(long key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ir.university.library.repository;
+
+import ir.university.library.model.BorrowRecord;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Tracks unreturned records by expected return day.
+ * Records are spread over shards by record ID so saves of different records
+ * rarely share a monitor; queries visit the shards one at a time.
+ * Within a shard, records due before the current horizon sit in the overdue
+ * map and the rest wait in the upcoming map; moving the horizon forward only
+ * shifts whole day buckets, so the overdue count is kept as a running total.
+ */
+class OverdueTracker {
+    private final Shard[] shards;
+
+    OverdueTracker() {
+        int size = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 4 - 1)) << 1;
+        this.shards = new Shard[size];
+        for (int i = 0; i < size; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    private Shard shardFor(String recordId) {
+        int hash = recordId.hashCode();
+        hash ^= hash >>> 16;
+        return shards[hash & (shards.length - 1)];
+    }
+
+    void track(BorrowRecord record) {
+        shardFor(record.getRecordId()).track(record);
+    }
+
+    void untrack(String recordId) {
+        shardFor(recordId).untrack(recordId);
+    }
+
+    int overdueCount(LocalDate today) {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.overdueCount(today);
+        }
+        return count;
+    }
+
+    /**
+     * Most overdue records first, up to the given limit. The shards are merged
+     * by their earliest overdue day, so only the day buckets that make it into
+     * the result are read.
+     */
+    List<BorrowRecord> nextOverdue(LocalDate today, int limit) {
+        List<BorrowRecord> result = new ArrayList<>();
+        if (limit <= 0) {
+            return result;
+        }
+        // Each head is {due day, shard index}, earliest day first
+        PriorityQueue<long[]> heads = new PriorityQueue<>(
+                Comparator.<long[]>comparingLong(head -> head[0]).thenComparingLong(head -> head[1]));
+        for (int i = 0; i < shards.length; i++) {
+            Long day = shards[i].overdueDayAfter(today, Long.MIN_VALUE);
+            if (day != null) {
+                heads.add(new long[]{day, i});
+            }
+        }
+        while (!heads.isEmpty() && result.size() < limit) {
+            long[] head = heads.poll();
+            Shard shard = shards[(int) head[1]];
+            shard.collectDay(head[0], limit, result);
+            Long next = shard.overdueDayAfter(today, head[0]);
+            if (next != null) {
+                head[0] = next;
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    void clear() {
+        for (Shard shard : shards) {
+            shard.clear();
+        }
+    }
+
+    /**
+     * One slice of the records; methods are synchronized and each call is a
+     * handful of map operations
+     */
+    private static class Shard {
+        private final NavigableMap<Long, Map<String, BorrowRecord>> upcoming;
+        private final NavigableMap<Long, Map<String, BorrowRecord>> overdue;
+        private final Map<String, Long> dueDayById;
+        private long horizon;
+        private int overdueCount;
+
+        Shard() {
+            this.upcoming = new TreeMap<>();
+            this.overdue = new TreeMap<>();
+            this.dueDayById = new HashMap<>();
+            this.horizon = LocalDate.now().toEpochDay();
+            this.overdueCount = 0;
+        }
+
+        synchronized void track(BorrowRecord record) {
+            if (record.getExpectedReturnDate() == null) {
+                untrack(record.getRecordId());
+                return;
+            }
+            long dueDay = record.getExpectedReturnDate().toEpochDay();
+            Long previous = dueDayById.get(record.getRecordId());
+            if (previous != null && previous == dueDay) {
+                // Same bucket; keep the latest instance of the record
+                (dueDay < horizon ? overdue : upcoming).get(dueDay).put(record.getRecordId(), record);
+                return;
+            }
+            untrack(record.getRecordId());
+            dueDayById.put(record.getRecordId(), dueDay);
+            if (dueDay < horizon) {
+                overdue.computeIfAbsent(dueDay, d -> new LinkedHashMap<>()).put(record.getRecordId(), record);
+                overdueCount++;
+            } else {
+                upcoming.computeIfAbsent(dueDay, d -> new LinkedHashMap<>()).put(record.getRecordId(), record);
+            }
+        }
+
+        synchronized void untrack(String recordId) {
+            Long dueDay = dueDayById.remove(recordId);
+            if (dueDay == null) {
+                return;
+            }
+            if (dueDay < horizon) {
+                removeFrom(overdue, dueDay, recordId);
+                overdueCount--;
+            } else {
+                removeFrom(upcoming, dueDay, recordId);
+            }
+        }
+
+        private static void removeFrom(NavigableMap<Long, Map<String, BorrowRecord>> buckets,
+                                       long dueDay, String recordId) {
+            Map<String, BorrowRecord> bucket = buckets.get(dueDay);
+            if (bucket != null) {
+                bucket.remove(recordId);
+                if (bucket.isEmpty()) {
+                    buckets.remove(dueDay);
+                }
+            }
+        }
+
+        /**
+         * Move the horizon to the given day, shifting the day buckets that
+         * became overdue (or, if the clock went back, stopped being overdue)
+         */
+        private void advanceTo(LocalDate today) {
+            long day = today.toEpochDay();
+            while (!upcoming.isEmpty() && upcoming.firstKey() < day) {
+                Map.Entry<Long, Map<String, BorrowRecord>> entry = upcoming.pollFirstEntry();
+                overdue.put(entry.getKey(), entry.getValue());
+                overdueCount += entry.getValue().size();
+            }
+            while (!overdue.isEmpty() && overdue.lastKey() >= day) {
+                Map.Entry<Long, Map<String, BorrowRecord>> entry = overdue.pollLastEntry();
+                upcoming.put(entry.getKey(), entry.getValue());
+                overdueCount -= entry.getValue().size();
+            }
+            horizon = day;
+        }
+
+        synchronized int overdueCount(LocalDate today) {
+            advanceTo(today);
+            return overdueCount;
+        }
+
+        /**
+         * The earliest overdue day after the given one, or null if there is none
+         */
+        synchronized Long overdueDayAfter(LocalDate today, long afterDay) {
+            advanceTo(today);
+            return overdue.higherKey(afterDay);
+        }
+
+        /**
+         * Append the overdue records due on the day until the result reaches the limit
+         */
+        synchronized void collectDay(long day, int limit, List<BorrowRecord> result) {
+            Map<String, BorrowRecord> bucket = overdue.get(day);
+            if (bucket == null) {
+                return;
+            }
+            for (BorrowRecord record : bucket.values()) {
+                if (result.size() >= limit) {
+                    return;
+                }
+                result.add(record);
+            }
+        }
+
+        synchronized void clear() {
+            upcoming.clear();
+            overdue.clear();
+            dueDayById.clear();
+            overdueCount = 0;
+        }
+    }
+}
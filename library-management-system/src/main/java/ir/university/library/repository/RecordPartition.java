@@ -0,0 +1,9 @@
+package ir.university.library.repository;
+
+/**
+ * A slice of the borrow records that can be scanned independently of the
+ * others, so report aggregation can run one slice per fork/join task
+ */
+interface RecordPartition {
+    void visitReturned(ReturnedRecordVisitor visitor);
+}
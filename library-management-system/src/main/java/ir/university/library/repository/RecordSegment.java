@@ -0,0 +1,345 @@
+package ir.university.library.repository;
+
+import ir.university.library.model.BorrowRecord;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * An immutable, memory-mapped block of returned borrow records stored by column.
+ * Rows are sorted by student code so one student's rows are contiguous, and a
+ * second column lists the rows in record ID order for point lookups and a
+ * third lists them in book code order for per-book lookups.
+ * Rows that are edited again move back to the heap and are masked here.
+ */
+class RecordSegment {
+    private static final int NULL_DAY = Integer.MIN_VALUE;
+    private static final int SECONDS_PER_DAY = 86_400;
+
+    // Bit planes, one bit per row
+    private static final int HAS_RETURN_DATE = 0;
+    private static final int HAS_REQUEST_ID = 1;
+    private static final int PLANES = 2;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int studentColumn;
+    private final int bookColumn;
+    private final int lentByColumn;
+    private final int receivedByColumn;
+    private final int startColumn;
+    private final int expectedColumn;
+    private final int returnSecondColumn;
+    private final int returnNanoColumn;
+    private final int flagColumn;
+    private final int idOrderColumn;
+    private final int bookOrderColumn;
+    private final int stringOffsetColumn;
+    private final int stringColumn;
+    private final BitSet removed;
+
+    private RecordSegment(Path file, MappedByteBuffer buffer, int count) {
+        this.file = file;
+        this.buffer = buffer;
+        this.count = count;
+        int words = (count + 63) / 64;
+        this.studentColumn = 0;
+        this.bookColumn = studentColumn + count * Integer.BYTES;
+        this.lentByColumn = bookColumn + count * Integer.BYTES;
+        this.receivedByColumn = lentByColumn + count * Integer.BYTES;
+        this.startColumn = receivedByColumn + count * Integer.BYTES;
+        this.expectedColumn = startColumn + count * Integer.BYTES;
+        this.returnSecondColumn = expectedColumn + count * Integer.BYTES;
+        this.returnNanoColumn = returnSecondColumn + count * Long.BYTES;
+        this.flagColumn = returnNanoColumn + count * Integer.BYTES;
+        this.idOrderColumn = flagColumn + PLANES * words * Long.BYTES;
+        this.bookOrderColumn = idOrderColumn + count * Integer.BYTES;
+        // Record ID and request ID of row i are strings 2i and 2i + 1
+        this.stringOffsetColumn = bookOrderColumn + count * Integer.BYTES;
+        this.stringColumn = stringOffsetColumn + (2 * count + 1) * Integer.BYTES;
+        this.removed = new BitSet(count);
+    }
+
+    /**
+     * Write the records to a new file and map it
+     */
+    static RecordSegment write(Path file, List<BorrowRecord> records,
+                               StringDictionary users, StringDictionary books) throws IOException {
+        int count = records.size();
+        int[] studentCodes = new int[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            studentCodes[i] = users.encode(records.get(i).getStudentUsername());
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> studentCodes[i]));
+
+        byte[][] strings = new byte[2 * count][];
+        int stringBytes = 0;
+        for (int row = 0; row < count; row++) {
+            BorrowRecord record = records.get(order[row]);
+            strings[2 * row] = record.getRecordId().getBytes(StandardCharsets.UTF_8);
+            strings[2 * row + 1] = record.getRequestId() == null
+                    ? new byte[0] : record.getRequestId().getBytes(StandardCharsets.UTF_8);
+            stringBytes += strings[2 * row].length + strings[2 * row + 1].length;
+        }
+
+        Integer[] idOrder = new Integer[count];
+        for (int row = 0; row < count; row++) {
+            idOrder[row] = row;
+        }
+        Arrays.sort(idOrder, (a, b) -> Arrays.compareUnsigned(strings[2 * a], strings[2 * b]));
+
+        int[] bookCodes = new int[count];
+        Integer[] bookOrder = new Integer[count];
+        for (int row = 0; row < count; row++) {
+            bookCodes[row] = books.encode(records.get(order[row]).getBookId());
+            bookOrder[row] = row;
+        }
+        Arrays.sort(bookOrder, Comparator.comparingInt(row -> bookCodes[row]));
+
+        int words = (count + 63) / 64;
+        long size = (long) count * (8 * Integer.BYTES + Long.BYTES + Integer.BYTES)
+                + (long) PLANES * words * Long.BYTES
+                + (2L * count + 1) * Integer.BYTES
+                + stringBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many records for one segment: " + count);
+        }
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, 1));
+        }
+        RecordSegment segment = new RecordSegment(file, buffer, count);
+
+        long[][] planes = new long[PLANES][words];
+        int stringOffset = 0;
+        for (int row = 0; row < count; row++) {
+            BorrowRecord record = records.get(order[row]);
+            buffer.putInt(segment.studentColumn + row * Integer.BYTES, studentCodes[order[row]]);
+            buffer.putInt(segment.bookColumn + row * Integer.BYTES, bookCodes[row]);
+            buffer.putInt(segment.lentByColumn + row * Integer.BYTES, users.encode(record.getLentBy()));
+            buffer.putInt(segment.receivedByColumn + row * Integer.BYTES, users.encode(record.getReceivedBy()));
+            buffer.putInt(segment.startColumn + row * Integer.BYTES, toDay(record.getStartDate()));
+            buffer.putInt(segment.expectedColumn + row * Integer.BYTES, toDay(record.getExpectedReturnDate()));
+
+            LocalDateTime returned = record.getActualReturnDate();
+            if (returned != null) {
+                buffer.putLong(segment.returnSecondColumn + row * Long.BYTES, returned.toEpochSecond(ZoneOffset.UTC));
+                buffer.putInt(segment.returnNanoColumn + row * Integer.BYTES, returned.getNano());
+                planes[HAS_RETURN_DATE][row >>> 6] |= 1L << row;
+            }
+            if (record.getRequestId() != null) {
+                planes[HAS_REQUEST_ID][row >>> 6] |= 1L << row;
+            }
+            buffer.putInt(segment.idOrderColumn + row * Integer.BYTES, idOrder[row]);
+            buffer.putInt(segment.bookOrderColumn + row * Integer.BYTES, bookOrder[row]);
+
+            for (int s = 2 * row; s <= 2 * row + 1; s++) {
+                buffer.putInt(segment.stringOffsetColumn + s * Integer.BYTES, stringOffset);
+                buffer.put(segment.stringColumn + stringOffset, strings[s]);
+                stringOffset += strings[s].length;
+            }
+        }
+        buffer.putInt(segment.stringOffsetColumn + 2 * count * Integer.BYTES, stringOffset);
+        for (int plane = 0; plane < PLANES; plane++) {
+            for (int word = 0; word < words; word++) {
+                buffer.putLong(segment.flagColumn + (plane * words + word) * Long.BYTES, planes[plane][word]);
+            }
+        }
+        return segment;
+    }
+
+    private static int toDay(LocalDate date) {
+        return date == null ? NULL_DAY : Math.toIntExact(date.toEpochDay());
+    }
+
+    private static LocalDate fromDay(int day) {
+        return day == NULL_DAY ? null : LocalDate.ofEpochDay(day);
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    private int column(int column, int row) {
+        return buffer.getInt(column + row * Integer.BYTES);
+    }
+
+    private boolean flag(int plane, int row) {
+        int words = (count + 63) / 64;
+        long word = buffer.getLong(flagColumn + (plane * words + (row >>> 6)) * Long.BYTES);
+        return (word & (1L << row)) != 0;
+    }
+
+    private byte[] stringBytes(int index) {
+        int from = buffer.getInt(stringOffsetColumn + index * Integer.BYTES);
+        int to = buffer.getInt(stringOffsetColumn + (index + 1) * Integer.BYTES);
+        byte[] bytes = new byte[to - from];
+        buffer.get(stringColumn + from, bytes);
+        return bytes;
+    }
+
+    /**
+     * Compare the record ID of a row with the given UTF-8 key without copying it
+     */
+    private int compareRecordId(int row, byte[] key) {
+        int from = buffer.getInt(stringOffsetColumn + 2 * row * Integer.BYTES);
+        int to = buffer.getInt(stringOffsetColumn + (2 * row + 1) * Integer.BYTES);
+        int length = Math.min(to - from, key.length);
+        for (int i = 0; i < length; i++) {
+            int diff = Byte.toUnsignedInt(buffer.get(stringColumn + from + i)) - Byte.toUnsignedInt(key[i]);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (to - from) - key.length;
+    }
+
+    /**
+     * Row holding the given record ID, or -1 if it is not here (or was removed)
+     */
+    int find(String recordId) {
+        byte[] key = recordId.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int row = column(idOrderColumn, mid);
+            int cmp = compareRecordId(row, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return removed.get(row) ? -1 : row;
+            }
+        }
+        return -1;
+    }
+
+    BorrowRecord read(int row, StringDictionary users, StringDictionary books) {
+        LocalDateTime actualReturn = null;
+        if (flag(HAS_RETURN_DATE, row)) {
+            actualReturn = LocalDateTime.ofEpochSecond(
+                    buffer.getLong(returnSecondColumn + row * Long.BYTES),
+                    column(returnNanoColumn, row), ZoneOffset.UTC);
+        }
+        String requestId = flag(HAS_REQUEST_ID, row)
+                ? new String(stringBytes(2 * row + 1), StandardCharsets.UTF_8) : null;
+        return new BorrowRecord(
+                new String(stringBytes(2 * row), StandardCharsets.UTF_8),
+                requestId,
+                users.decode(column(studentColumn, row)),
+                books.decode(column(bookColumn, row)),
+                fromDay(column(startColumn, row)),
+                fromDay(column(expectedColumn, row)),
+                actualReturn,
+                users.decode(column(lentByColumn, row)),
+                users.decode(column(receivedByColumn, row)),
+                true);
+    }
+
+    void remove(int row) {
+        removed.set(row);
+    }
+
+    void forEach(Consumer<? super BorrowRecord> action, StringDictionary users, StringDictionary books) {
+        for (int row = 0; row < count; row++) {
+            if (!removed.get(row)) {
+                action.accept(read(row, users, books));
+            }
+        }
+    }
+
+    /**
+     * Rows of one student, found by binary search on the sorted student column
+     */
+    void readByStudent(int studentCode, List<BorrowRecord> result,
+                       StringDictionary users, StringDictionary books) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (column(studentColumn, mid) < studentCode) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int row = low; row < count && column(studentColumn, row) == studentCode; row++) {
+            if (!removed.get(row)) {
+                result.add(read(row, users, books));
+            }
+        }
+    }
+
+    /**
+     * Rows of one book, found by binary search on the book order column
+     */
+    void readByBook(int bookCode, List<BorrowRecord> result,
+                    StringDictionary users, StringDictionary books) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (column(bookColumn, column(bookOrderColumn, mid)) < bookCode) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < count; i++) {
+            int row = column(bookOrderColumn, i);
+            if (column(bookColumn, row) != bookCode) {
+                break;
+            }
+            if (!removed.get(row)) {
+                result.add(read(row, users, books));
+            }
+        }
+    }
+
+    int rowCount() {
+        return count;
+    }
+
+    /**
+     * Pass the columns of every fully dated row to the visitor
+     */
+    void visitReturned(ReturnedRecordVisitor visitor, StringDictionary users, StringDictionary books) {
+        visitReturned(visitor, users, books, 0, count);
+    }
+
+    /**
+     * Visit the returned rows in [fromRow, toRow); safe to run for disjoint
+     * ranges in parallel while the segment is not being modified
+     */
+    void visitReturned(ReturnedRecordVisitor visitor, StringDictionary users, StringDictionary books,
+                       int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            if (removed.get(row) || !flag(HAS_RETURN_DATE, row)
+                    || column(startColumn, row) == NULL_DAY || column(expectedColumn, row) == NULL_DAY) {
+                continue;
+            }
+            long returnSecond = buffer.getLong(returnSecondColumn + row * Long.BYTES);
+            visitor.visit(users.decode(column(studentColumn, row)),
+                    books.decode(column(bookColumn, row)),
+                    column(startColumn, row),
+                    column(expectedColumn, row),
+                    Math.floorDiv(returnSecond, SECONDS_PER_DAY));
+        }
+    }
+}
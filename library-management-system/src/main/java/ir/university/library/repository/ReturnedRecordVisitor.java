@@ -0,0 +1,10 @@
+package ir.university.library.repository;
+
+/**
+ * Receives the fields of returned borrow records without materializing
+ * BorrowRecord objects. Dates are epoch days. Only records with an actual
+ * return date are visited.
+ */
+public interface ReturnedRecordVisitor {
+    void visit(String studentUsername, String bookId, long startDay, long expectedReturnDay, long returnDay);
+}
@@ -0,0 +1,182 @@
+package ir.university.library.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of normalized search keys to the IDs of the matching books.
+ * Keys are value objects with equals and hashCode.
+ * The bound is on the total number of cached IDs, so a few broad queries cannot
+ * crowd out many narrow ones. Every entry remembers the catalogue generation it
+ * was computed in; any write bumps the generation, which retires all older
+ * entries at once without walking the cache.
+ * Lookups and inserts go straight to a concurrent map. Once the bound is
+ * exceeded, one thread at a time drops the retired entries and then the least
+ * recently used ones until the cache is back under three quarters of the bound.
+ */
+class SearchCache<K> {
+    static final int DEFAULT_MAX_WEIGHT = 1 << 16;
+
+    private static final class Entry {
+        final long generation;
+        final List<String> bookIds;
+        volatile long lastUsed;
+
+        Entry(long generation, List<String> bookIds) {
+            this.generation = generation;
+            this.bookIds = bookIds;
+            this.lastUsed = System.nanoTime();
+        }
+
+        int weight() {
+            return bookIds.size() + 1;
+        }
+    }
+
+    private final Map<K, Entry> entries;
+    private final int maxWeight;
+    private final AtomicLong generation;
+    private final AtomicInteger weight;
+    private final ReentrantLock evictionLock;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    SearchCache() {
+        this(DEFAULT_MAX_WEIGHT);
+    }
+
+    SearchCache(int maxWeight) {
+        this.entries = new ConcurrentHashMap<>();
+        this.maxWeight = maxWeight;
+        this.generation = new AtomicLong();
+        this.weight = new AtomicInteger();
+        this.evictionLock = new ReentrantLock();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Current generation; read it before computing a result to cache
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Retire every cached result; called after each catalogue or availability change
+     */
+    void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * The cached IDs for the key if computed in the current generation, else null
+     */
+    List<String> get(K key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.generation == generation.get()) {
+            entry.lastUsed = System.nanoTime();
+            hits.increment();
+            return entry.bookIds;
+        }
+        if (entry != null) {
+            remove(key, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Cache a result computed in the given generation. Results that are already
+     * stale, or too large to be worth the space, are dropped.
+     */
+    void put(K key, long computedIn, List<String> bookIds) {
+        Entry entry = new Entry(computedIn, List.copyOf(bookIds));
+        if (entry.weight() > maxWeight / 8 || computedIn != generation.get()) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        weight.addAndGet(previous == null ? entry.weight() : entry.weight() - previous.weight());
+        if (weight.get() > maxWeight) {
+            evict();
+        }
+    }
+
+    /**
+     * Remove the entry if it is still mapped; whichever call removes or
+     * replaces an entry takes its weight off the total
+     */
+    private void remove(K key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            weight.addAndGet(-entry.weight());
+        }
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long current = generation.get();
+            List<K> keys = new ArrayList<>();
+            List<Entry> live = new ArrayList<>();
+            for (Map.Entry<K, Entry> mapping : entries.entrySet()) {
+                if (mapping.getValue().generation != current) {
+                    remove(mapping.getKey(), mapping.getValue());
+                } else {
+                    keys.add(mapping.getKey());
+                    live.add(mapping.getValue());
+                }
+            }
+            int target = maxWeight - maxWeight / 4;
+            if (weight.get() <= target) {
+                return;
+            }
+            // Sort on a copy of the access times, which keep moving meanwhile
+            long[] lastUsed = new long[live.size()];
+            Integer[] oldestFirst = new Integer[live.size()];
+            for (int i = 0; i < lastUsed.length; i++) {
+                lastUsed[i] = live.get(i).lastUsed;
+                oldestFirst[i] = i;
+            }
+            Arrays.sort(oldestFirst, Comparator.comparingLong(i -> lastUsed[i]));
+            for (int i : oldestFirst) {
+                if (weight.get() <= target) {
+                    break;
+                }
+                remove(keys.get(i), live.get(i));
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        generation.incrementAndGet();
+        for (Map.Entry<K, Entry> mapping : entries.entrySet()) {
+            remove(mapping.getKey(), mapping.getValue());
+        }
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -0,0 +1,74 @@
+package ir.university.library.repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Authoritative per-staff activity counts: books registered, loans approved
+ * (lent) and returns received. Each repository owns one and updates it as
+ * books or records are saved or removed, so the counts always match the
+ * data it stores: BookRepository keeps the registrations and BorrowRepository
+ * the loans. Each counter is a LongAdder, so staff working in parallel do
+ * not contend on one cache line.
+ */
+class StaffActivityIndex {
+
+    private static final class Counters {
+        final LongAdder registered = new LongAdder();
+        final LongAdder lent = new LongAdder();
+        final LongAdder received = new LongAdder();
+    }
+
+    private final Map<String, Counters> counters;
+
+    StaffActivityIndex() {
+        this.counters = new ConcurrentHashMap<>();
+    }
+
+    void addRegistered(String staffUsername, long delta) {
+        if (staffUsername != null) {
+            countersFor(staffUsername).registered.add(delta);
+        }
+    }
+
+    void addLent(String staffUsername, long delta) {
+        if (staffUsername != null) {
+            countersFor(staffUsername).lent.add(delta);
+        }
+    }
+
+    void addReceived(String staffUsername, long delta) {
+        if (staffUsername != null) {
+            countersFor(staffUsername).received.add(delta);
+        }
+    }
+
+    long getBooksRegistered(String staffUsername) {
+        Counters staff = counters.get(staffUsername);
+        return staff == null ? 0 : staff.registered.sum();
+    }
+
+    long getBooksLent(String staffUsername) {
+        Counters staff = counters.get(staffUsername);
+        return staff == null ? 0 : staff.lent.sum();
+    }
+
+    long getBooksReceived(String staffUsername) {
+        Counters staff = counters.get(staffUsername);
+        return staff == null ? 0 : staff.received.sum();
+    }
+
+    /**
+     * Reset every count; called by the owning repository's clear while it
+     * holds off writers
+     */
+    void clear() {
+        counters.clear();
+    }
+
+    private Counters countersFor(String staffUsername) {
+        Counters staff = counters.get(staffUsername);
+        return staff != null ? staff : counters.computeIfAbsent(staffUsername, key -> new Counters());
+    }
+}
@@ -0,0 +1,63 @@
+package ir.university.library.repository;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense int codes to repeated strings such as usernames and book IDs.
+ * Code -1 stands for null.
+ * One thread at a time may encode; lookups and decodes of codes that were
+ * already handed out can run alongside it.
+ */
+class StringDictionary {
+    static final int NULL_CODE = -1;
+
+    private final Map<String, Integer> codes;
+    private volatile String[] values;
+    private int size;
+
+    StringDictionary() {
+        this.codes = new ConcurrentHashMap<>();
+        this.values = new String[16];
+    }
+
+    int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = size;
+            String[] current = values;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+                current[size] = value;
+                values = current;
+            } else {
+                current[size] = value;
+            }
+            size++;
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * Code of an existing value, or NULL_CODE if it was never encoded
+     */
+    int lookup(String value) {
+        Integer code = value == null ? null : codes.get(value);
+        return code == null ? NULL_CODE : code;
+    }
+
+    String decode(int code) {
+        return code == NULL_CODE ? null : values[code];
+    }
+
+    void clear() {
+        codes.clear();
+        values = new String[16];
+        size = 0;
+    }
+}
@@ -0,0 +1,49 @@
+package ir.university.library.repository;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared out by key hash.
+ * Mutations of the same key are serialized, so a key's secondary indexes
+ * and change-log entries stay in the order its writes happened, while
+ * writes to different keys usually proceed in parallel.
+ */
+class StripedLock {
+    private final ReentrantLock[] stripes;
+
+    StripedLock(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Default stripe count: a few per core so collisions stay rare
+     */
+    StripedLock() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    ReentrantLock forKey(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        hash ^= hash >>> 16;
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    /**
+     * Lock every stripe, always in the same order, for whole-repository operations
+     */
+    void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package ir.university.library.repository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Substring index over one text field of the books.
+ * Queries of three or more characters are narrowed with trigram posting
+ * lists, shorter ones with the token dictionary. Both only produce
+ * candidates; the stored lowercased text is used to verify the real
+ * {@code contains} match without lowercasing again on each search.
+ * Posting lists are concurrent and only change through atomic per-key
+ * updates, so searches never need a lock; callers serialize the writes
+ * for any one book. Every token ever indexed is also kept in a BK-tree for
+ * typo-tolerant lookups; tokens whose books are all gone stay in the tree
+ * until the index is cleared, and simply match no book.
+ */
+class TextIndex {
+    private static final int GRAM = 3;
+
+    private final Map<String, Set<String>> tokenPostings;
+    private final Map<Long, Set<String>> trigramPostings;
+    private final Map<String, String> normalizedText;
+    private final BkTree dictionary;
+
+    TextIndex() {
+        this.tokenPostings = new ConcurrentHashMap<>();
+        this.trigramPostings = new ConcurrentHashMap<>();
+        this.normalizedText = new ConcurrentHashMap<>();
+        this.dictionary = new BkTree();
+    }
+
+    /**
+     * Normalize text the same way searches do
+     */
+    static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase();
+    }
+
+    /**
+     * Split normalized text into maximal runs of letters and digits
+     */
+    static Set<String> tokenize(String normalized) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i < normalized.length(); i++) {
+            if (Character.isLetterOrDigit(normalized.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(normalized.substring(start));
+        }
+        return tokens;
+    }
+
+    /**
+     * Distinct trigrams of normalized text, each packed into a long
+     */
+    static Set<Long> trigrams(String normalized) {
+        Set<Long> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= normalized.length(); i++) {
+            grams.add(pack(normalized, i));
+        }
+        return grams;
+    }
+
+    private static long pack(String text, int offset) {
+        return ((long) text.charAt(offset) << 32)
+                | ((long) text.charAt(offset + 1) << 16)
+                | text.charAt(offset + 2);
+    }
+
+    /**
+     * Index the text of a book, or reindex it if it changed. Only the
+     * postings that differ are touched, new ones before stale ones go, so a
+     * search running meanwhile still finds the book under either text.
+     */
+    void add(String bookId, String text) {
+        String normalized = normalize(text);
+        String previous = normalizedText.get(bookId);
+        if (normalized.equals(previous)) {
+            return;
+        }
+        Set<String> oldTokens = previous == null ? Collections.emptySet() : tokenize(previous);
+        Set<Long> oldGrams = previous == null ? Collections.emptySet() : trigrams(previous);
+        Set<String> tokens = tokenize(normalized);
+        Set<Long> grams = trigrams(normalized);
+        for (String token : tokens) {
+            if (!oldTokens.contains(token)) {
+                boolean known = tokenPostings.containsKey(token);
+                addPosting(tokenPostings, token, bookId);
+                if (!known) {
+                    dictionary.add(token);
+                }
+            }
+        }
+        for (Long gram : grams) {
+            if (!oldGrams.contains(gram)) {
+                addPosting(trigramPostings, gram, bookId);
+            }
+        }
+        normalizedText.put(bookId, normalized);
+        for (String token : oldTokens) {
+            if (!tokens.contains(token)) {
+                removePosting(tokenPostings, token, bookId);
+            }
+        }
+        for (Long gram : oldGrams) {
+            if (!grams.contains(gram)) {
+                removePosting(trigramPostings, gram, bookId);
+            }
+        }
+    }
+
+    private static <K> void addPosting(Map<K, Set<String>> postings, K key, String bookId) {
+        // Inside compute, so a concurrent removal cannot drop the list we add to
+        postings.compute(key, (k, ids) -> {
+            Set<String> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            result.add(bookId);
+            return result;
+        });
+    }
+
+    void remove(String bookId) {
+        String previous = normalizedText.remove(bookId);
+        if (previous == null) {
+            return;
+        }
+        for (String token : tokenize(previous)) {
+            removePosting(tokenPostings, token, bookId);
+        }
+        for (Long gram : trigrams(previous)) {
+            removePosting(trigramPostings, gram, bookId);
+        }
+    }
+
+    private static <K> void removePosting(Map<K, Set<String>> postings, K key, String bookId) {
+        postings.computeIfPresent(key, (k, ids) -> {
+            ids.remove(bookId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Check whether the indexed text of a book contains the normalized query
+     */
+    boolean matches(String bookId, String normalizedQuery) {
+        String text = normalizedText.get(bookId);
+        return text != null && text.contains(normalizedQuery);
+    }
+
+    /**
+     * Find books that may contain the normalized query as a substring.
+     * The result is a superset of the real matches, or null when the
+     * query gives nothing to narrow by.
+     */
+    Set<String> candidates(String normalizedQuery) {
+        if (normalizedQuery.length() >= GRAM) {
+            return trigramCandidates(normalizedQuery);
+        }
+        return tokenCandidates(normalizedQuery);
+    }
+
+    /**
+     * Every trigram of the query must occur in the text, so intersect the
+     * posting lists starting from the shortest one
+     */
+    private Set<String> trigramCandidates(String normalizedQuery) {
+        List<Set<String>> lists = new ArrayList<>();
+        for (Long gram : trigrams(normalizedQuery)) {
+            Set<String> ids = trigramPostings.get(gram);
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        Set<String> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Every token of a short query must appear inside some token of the text
+     */
+    private Set<String> tokenCandidates(String normalizedQuery) {
+        Set<String> queryTokens = tokenize(normalizedQuery);
+        if (queryTokens.isEmpty()) {
+            return null;
+        }
+        Set<String> result = null;
+        for (String queryToken : queryTokens) {
+            Set<String> tokenMatches = new HashSet<>();
+            for (Map.Entry<String, Set<String>> entry : tokenPostings.entrySet()) {
+                if (entry.getKey().contains(queryToken)) {
+                    tokenMatches.addAll(entry.getValue());
+                }
+            }
+            result = intersect(result, tokenMatches);
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Dictionary tokens within maxDistance edits of the given token, each with its distance
+     */
+    Map<String, Integer> similarTokens(String token, int maxDistance) {
+        Map<String, Integer> result = new HashMap<>();
+        dictionary.search(token, maxDistance, result::put);
+        return result;
+    }
+
+    /**
+     * Total posting list length of the tokens, as an estimate of how many books they match
+     */
+    long postingCount(Map<String, Integer> tokens) {
+        long count = 0;
+        for (String token : tokens.keySet()) {
+            Set<String> ids = tokenPostings.get(token);
+            count += ids == null ? 0 : ids.size();
+        }
+        return count;
+    }
+
+    /**
+     * Add every book indexed under one of the tokens to the result,
+     * keeping the smallest distance per book
+     */
+    void collectBooks(Map<String, Integer> tokens, Map<String, Integer> result) {
+        for (Map.Entry<String, Integer> entry : tokens.entrySet()) {
+            Set<String> ids = tokenPostings.get(entry.getKey());
+            if (ids != null) {
+                for (String id : ids) {
+                    result.merge(id, entry.getValue(), Math::min);
+                }
+            }
+        }
+    }
+
+    /**
+     * Smallest distance among the tokens the book is indexed under,
+     * or Integer.MAX_VALUE if it has none of them
+     */
+    int closestDistance(String bookId, Map<String, Integer> tokens) {
+        int closest = Integer.MAX_VALUE;
+        for (Map.Entry<String, Integer> entry : tokens.entrySet()) {
+            Set<String> ids = tokenPostings.get(entry.getKey());
+            if (entry.getValue() < closest && ids != null && ids.contains(bookId)) {
+                closest = entry.getValue();
+            }
+        }
+        return closest;
+    }
+
+    void clear() {
+        dictionary.clear();
+        tokenPostings.clear();
+        trigramPostings.clear();
+        normalizedText.clear();
+    }
+
+    static Set<String> intersect(Set<String> current, Set<String> next) {
+        if (current == null) {
+            return next;
+        }
+        if (next == null) {
+            return current;
+        }
+        Set<String> smaller = current.size() <= next.size() ? current : next;
+        Set<String> larger = smaller == current ? next : current;
+        Set<String> result = new HashSet<>();
+        for (String id : smaller) {
+            if (larger.contains(id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+}
@@ -3,17 +3,42 @@ package ir.university.library.repository;
 import ir.university.library.model.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 
 /**
- * Repository for managing users in memory
+ * Repository for managing users in memory, ordered by username so the
+ * user list can be paged through with the last username seen as cursor.
+ * Students, staff and managers are also kept in their own partitions, and
+ * the student and active-student counts are maintained on every save,
+ * delete and activation change, so type queries never scan other users.
+ * Reads are lock-free; writes to one username are serialized by a striped lock.
  */
 public class UserRepository {
-    private final Map<String, User> users;
+    private final NavigableMap<String, User> users;
+    private final NavigableMap<String, Student> students;
+    private final NavigableMap<String, Staff> staff;
+    private final NavigableMap<String, Manager> managers;
+    private final Set<String> activeStudents;
+    private final AtomicLong studentCount;
+    private final User.ActiveListener activeListener;
+    private final StripedLock locks;
+    private volatile ChangeLog changeLog;
     private static UserRepository instance;
 
     private UserRepository() {
-        this.users = new HashMap<>();
+        this.users = new ConcurrentSkipListMap<>();
+        this.students = new ConcurrentSkipListMap<>();
+        this.staff = new ConcurrentSkipListMap<>();
+        this.managers = new ConcurrentSkipListMap<>();
+        this.activeStudents = ConcurrentHashMap.newKeySet();
+        this.studentCount = new AtomicLong();
+        this.activeListener = this::activeChanged;
+        this.locks = new StripedLock();
+        this.changeLog = ChangeLog.NONE;
         initializeDefaultUsers();
     }
 
@@ -24,26 +49,95 @@ public class UserRepository {
         return instance;
     }
 
+    /**
+     * Attach a change log that receives every mutation (ChangeLog.NONE to detach)
+     */
+    public void setChangeLog(ChangeLog changeLog) {
+        this.changeLog = changeLog == null ? ChangeLog.NONE : changeLog;
+    }
+
     private void initializeDefaultUsers() {
         // Create default manager
         Manager manager = new Manager("admin", "admin123", "Library Manager");
-        users.put(manager.getUsername(), manager);
+        store(manager);
 
         // Create default staff members
         Staff staff1 = new Staff("staff1", "staff123", "S001", "John Doe");
         Staff staff2 = new Staff("staff2", "staff123", "S002", "Jane Smith");
         Staff staff3 = new Staff("staff3", "staff123", "S003", "Bob Johnson");
-        
-        users.put(staff1.getUsername(), staff1);
-        users.put(staff2.getUsername(), staff2);
-        users.put(staff3.getUsername(), staff3);
+
+        store(staff1);
+        store(staff2);
+        store(staff3);
     }
 
     public void save(User user) {
         if (user == null) {
             throw new IllegalArgumentException("User cannot be null");
         }
-        users.put(user.getUsername(), user);
+        Lock lock = locks.forKey(user.getUsername());
+        lock.lock();
+        try {
+            store(user);
+            changeLog.userSaved(user);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void store(User user) {
+        String username = user.getUsername();
+        User previous = users.put(username, user);
+        if (previous != null && previous != user) {
+            unindex(previous);
+        }
+        if (user instanceof Student) {
+            if (students.put(username, (Student) user) == null) {
+                studentCount.incrementAndGet();
+            }
+        } else if (user instanceof Staff) {
+            staff.put(username, (Staff) user);
+        } else if (user instanceof Manager) {
+            managers.put(username, (Manager) user);
+        }
+        user.setActiveListener(activeListener);
+        updateActive(user);
+    }
+
+    private void unindex(User user) {
+        String username = user.getUsername();
+        user.setActiveListener(null);
+        if (students.remove(username) != null) {
+            studentCount.decrementAndGet();
+        }
+        staff.remove(username);
+        managers.remove(username);
+        activeStudents.remove(username);
+    }
+
+    private void activeChanged(User user) {
+        Lock lock = locks.forKey(user.getUsername());
+        lock.lock();
+        try {
+            // A replaced or deleted copy no longer counts
+            if (users.get(user.getUsername()) == user) {
+                updateActive(user);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set the user's active-student membership from its current state;
+     * idempotent, so it is exact however saves and activations interleave
+     */
+    private void updateActive(User user) {
+        if (user instanceof Student && user.isActive()) {
+            activeStudents.add(user.getUsername());
+        } else {
+            activeStudents.remove(user.getUsername());
+        }
     }
 
     public Optional<User> findByUsername(String username) {
@@ -58,38 +152,106 @@ public class UserRepository {
         return new ArrayList<>(users.values());
     }
 
+    /**
+     * Up to limit users with usernames after the given one (null for the first page)
+     */
+    public List<User> page(String afterUsername, int limit) {
+        return page(User.class, afterUsername, limit);
+    }
+
+    /**
+     * Up to limit users of the given type with usernames after the given one
+     * (null for the first page). Pass the last username of a page to get the next.
+     */
+    public <T extends User> List<T> page(Class<T> type, String afterUsername, int limit) {
+        List<T> result = new ArrayList<>(Math.max(0, Math.min(limit, 64)));
+        NavigableMap<String, ? extends User> partition = partitionFor(type);
+        Collection<? extends User> tail = afterUsername == null ? partition.values()
+                : partition.tailMap(afterUsername, false).values();
+        for (User user : tail) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (type.isInstance(user)) {
+                result.add(type.cast(user));
+            }
+        }
+        return result;
+    }
+
+    private NavigableMap<String, ? extends User> partitionFor(Class<? extends User> type) {
+        if (Student.class.isAssignableFrom(type)) {
+            return students;
+        }
+        if (Staff.class.isAssignableFrom(type)) {
+            return staff;
+        }
+        if (Manager.class.isAssignableFrom(type)) {
+            return managers;
+        }
+        return users;
+    }
+
+    /**
+     * Visit every user in username order without copying the user list
+     */
+    public void forEach(Consumer<? super User> action) {
+        users.values().forEach(action);
+    }
+
+    /**
+     * Weakly consistent spliterator over all users in username order
+     */
+    public Spliterator<User> spliterator() {
+        return users.values().spliterator();
+    }
+
     public List<Student> findAllStudents() {
-        return users.values().stream()
-                .filter(user -> user instanceof Student)
-                .map(user -> (Student) user)
-                .collect(Collectors.toList());
+        return new ArrayList<>(students.values());
     }
 
     public List<Staff> findAllStaff() {
-        return users.values().stream()
-                .filter(user -> user instanceof Staff)
-                .map(user -> (Staff) user)
-                .collect(Collectors.toList());
+        return new ArrayList<>(staff.values());
     }
 
     public long countStudents() {
-        return users.values().stream()
-                .filter(user -> user instanceof Student)
-                .count();
+        return studentCount.get();
     }
 
     public long countActiveStudents() {
-        return users.values().stream()
-                .filter(user -> user instanceof Student && user.isActive())
-                .count();
+        return activeStudents.size();
     }
 
     public void delete(String username) {
-        users.remove(username);
+        Lock lock = locks.forKey(username);
+        lock.lock();
+        try {
+            User removed = users.remove(username);
+            if (removed != null) {
+                unindex(removed);
+            }
+            changeLog.userDeleted(username);
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void clear() {
-        users.clear();
-        initializeDefaultUsers();
+        locks.lockAll();
+        try {
+            for (User user : users.values()) {
+                user.setActiveListener(null);
+            }
+            users.clear();
+            students.clear();
+            staff.clear();
+            managers.clear();
+            activeStudents.clear();
+            studentCount.set(0);
+            initializeDefaultUsers();
+            changeLog.usersCleared();
+        } finally {
+            locks.unlockAll();
+        }
     }
-}
\ No newline at end of file
+}
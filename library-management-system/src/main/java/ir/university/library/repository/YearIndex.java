@@ -0,0 +1,100 @@
+package ir.university.library.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Publication year of every book, as a sorted map from year to the bitmap of
+ * book ordinals published that year. A year range is one sub-map walk, so
+ * exact, bounded and open-ended queries all take O(log y + k) for the y
+ * distinct years and k matching books. The indexed year of each ordinal is
+ * remembered, so a book edited in place is moved out of its old year on save.
+ */
+class YearIndex {
+    private final NavigableMap<Integer, RoaringBitmap> ordinalsByYear;
+    private final Map<Integer, Integer> yearByOrdinal;
+    private final ReadWriteLock lock;
+
+    YearIndex() {
+        this.ordinalsByYear = new TreeMap<>();
+        this.yearByOrdinal = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    void put(int ordinal, int year) {
+        lock.writeLock().lock();
+        try {
+            Integer previous = yearByOrdinal.put(ordinal, year);
+            if (previous != null && previous == year) {
+                return;
+            }
+            if (previous != null) {
+                removeFromYear(ordinal, previous);
+            }
+            ordinalsByYear.computeIfAbsent(year, y -> new RoaringBitmap()).add(ordinal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(int ordinal) {
+        lock.writeLock().lock();
+        try {
+            Integer previous = yearByOrdinal.remove(ordinal);
+            if (previous != null) {
+                removeFromYear(ordinal, previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeFromYear(int ordinal, int year) {
+        RoaringBitmap bitmap = ordinalsByYear.get(year);
+        bitmap.remove(ordinal);
+        if (bitmap.isEmpty()) {
+            ordinalsByYear.remove(year);
+        }
+    }
+
+    /**
+     * Ordinals of the books published from fromYear to toYear, both inclusive;
+     * a null bound leaves that side open
+     */
+    RoaringBitmap select(Integer fromYear, Integer toYear) {
+        RoaringBitmap result = new RoaringBitmap();
+        if (fromYear != null && toYear != null && fromYear > toYear) {
+            return result;
+        }
+        lock.readLock().lock();
+        try {
+            NavigableMap<Integer, RoaringBitmap> range = ordinalsByYear;
+            if (fromYear != null) {
+                range = range.tailMap(fromYear, true);
+            }
+            if (toYear != null) {
+                range = range.headMap(toYear, true);
+            }
+            for (RoaringBitmap bitmap : range.values()) {
+                result.or(bitmap);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            ordinalsByYear.clear();
+            yearByOrdinal.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
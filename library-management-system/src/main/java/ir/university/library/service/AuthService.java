@@ -45,7 +45,7 @@ public class AuthService {
         
         if (userOpt.isPresent()) {
             User user = userOpt.get();
-            if (user.getPassword().equals(password)) {
+            if (user.checkPassword(password)) {
                 return Optional.of(user);
             }
         }
@@ -60,7 +60,7 @@ public class AuthService {
         
         if (userOpt.isPresent()) {
             User user = userOpt.get();
-            if (user.getPassword().equals(oldPassword)) {
+            if (user.checkPassword(oldPassword)) {
                 user.setPassword(newPassword);
                 userRepository.save(user);
                 return true;
@@ -1,7 +1,6 @@
 package ir.university.library.service;
 
 import ir.university.library.model.Book;
-import ir.university.library.model.Staff;
 import ir.university.library.repository.BookRepository;
 import ir.university.library.repository.UserRepository;
 
@@ -13,11 +12,11 @@ import java.util.Optional;
  */
 public class BookService {
     private final BookRepository bookRepository;
-    private final UserRepository userRepository;
+    private final StaffService staffService;
 
     public BookService() {
         this.bookRepository = BookRepository.getInstance();
-        this.userRepository = UserRepository.getInstance();
+        this.staffService = new StaffService();
     }
 
     /**
@@ -33,15 +32,12 @@ public class BookService {
         }
 
         Book book = new Book(title, author, publicationYear, isbn, staffUsername);
+        // Rejects a duplicate ISBN before anything is stored
+        bookRepository.claimIsbn(book.getBookId(), isbn);
         bookRepository.save(book);
 
         // Update staff statistics
-        userRepository.findByUsername(staffUsername).ifPresent(user -> {
-            if (user instanceof Staff) {
-                ((Staff) user).incrementBooksRegistered();
-                userRepository.save(user);
-            }
-        });
+        staffService.reconcileActivity(staffUsername);
 
         return book;
     }
@@ -54,6 +50,11 @@ public class BookService {
         Optional<Book> bookOpt = bookRepository.findById(bookId);
         if (bookOpt.isPresent()) {
             Book book = bookOpt.get();
+            boolean newIsbn = isbn != null && !isbn.trim().isEmpty();
+            if (newIsbn) {
+                // Rejects a duplicate ISBN before the book is changed
+                bookRepository.claimIsbn(bookId, isbn);
+            }
             if (title != null && !title.trim().isEmpty()) {
                 book.setTitle(title);
             }
@@ -63,7 +64,7 @@ public class BookService {
             if (publicationYear > 0) {
                 book.setPublicationYear(publicationYear);
             }
-            if (isbn != null && !isbn.trim().isEmpty()) {
+            if (newIsbn) {
                 book.setIsbn(isbn);
             }
             bookRepository.save(book);
@@ -79,6 +80,22 @@ public class BookService {
         return bookRepository.search(title, year, author);
     }
 
+    /**
+     * Search books with filters, optionally leaving out books that are lent or withdrawn
+     */
+    public List<Book> searchBooks(String title, Integer year, String author, boolean availableOnly) {
+        return bookRepository.search(title, year, author, availableOnly);
+    }
+
+    /**
+     * Search books published from fromYear to toYear inclusive; either year
+     * bound may be null for an open-ended range
+     */
+    public List<Book> searchBooks(String title, Integer fromYear, Integer toYear, String author,
+                                  boolean availableOnly) {
+        return bookRepository.search(title, fromYear, toYear, author, availableOnly);
+    }
+
     /**
      * Search books by title only (for guests)
      */
@@ -86,6 +103,34 @@ public class BookService {
         return bookRepository.searchByTitle(title);
     }
 
+    /**
+     * Hit and miss counts of the shared search result cache
+     */
+    public SearchCacheStats getSearchCacheStats() {
+        return new SearchCacheStats(bookRepository.getSearchCacheHits(), bookRepository.getSearchCacheMisses());
+    }
+
+    /**
+     * Search titles and authors tolerating typos, closest matches first
+     */
+    public List<Book> fuzzySearch(String query) {
+        return bookRepository.fuzzySearch(query);
+    }
+
+    /**
+     * Search titles and authors allowing up to maxDistance edits per word
+     */
+    public List<Book> fuzzySearch(String query, int maxDistance) {
+        return bookRepository.fuzzySearch(query, maxDistance);
+    }
+
+    /**
+     * Find a book by ISBN, as typed or scanned, with or without hyphens
+     */
+    public Optional<Book> findByIsbn(String isbn) {
+        return bookRepository.findByIsbn(isbn);
+    }
+
     /**
      * Get book by ID
      */
@@ -107,6 +152,13 @@ public class BookService {
         return bookRepository.countAll();
     }
 
+    /**
+     * Get the number of books available for loan
+     */
+    public long getAvailableBookCount() {
+        return bookRepository.countAvailable();
+    }
+
     /**
      * Set book availability
      */
@@ -116,4 +168,19 @@ public class BookService {
             bookRepository.save(book);
         });
     }
-}
\ No newline at end of file
+
+    public static class SearchCacheStats {
+        public final long hits;
+        public final long misses;
+
+        public SearchCacheStats(long hits, long misses) {
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
@@ -7,8 +7,7 @@ import ir.university.library.repository.UserRepository;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 /**
  * Service for borrow operations
@@ -17,11 +16,13 @@ public class BorrowService {
     private final BorrowRepository borrowRepository;
     private final BookRepository bookRepository;
     private final UserRepository userRepository;
+    private final StaffService staffService;
 
     public BorrowService() {
         this.borrowRepository = BorrowRepository.getInstance();
         this.bookRepository = BookRepository.getInstance();
         this.userRepository = UserRepository.getInstance();
+        this.staffService = new StaffService();
     }
 
     /**
@@ -38,12 +39,13 @@ public class BorrowService {
             throw new IllegalStateException("Student account is inactive");
         }
 
-        // Validate book exists and is available
+        // Validate book exists and is in circulation; a lent book can still
+        // be requested for dates after its current loans
         Optional<Book> bookOpt = bookRepository.findById(bookId);
         if (bookOpt.isEmpty()) {
             throw new IllegalArgumentException("Book not found");
         }
-        if (!bookOpt.get().isAvailable()) {
+        if (!bookOpt.get().isAvailable() && !borrowRepository.hasActiveLoans(bookId)) {
             throw new IllegalStateException("Book is not available");
         }
 
@@ -55,12 +57,29 @@ public class BorrowService {
         if (endDate.isBefore(startDate)) {
             throw new IllegalArgumentException("End date must be after start date");
         }
+        Optional<BorrowRecord> conflict = borrowRepository.findConflictingLoan(bookId, startDate, endDate);
+        if (conflict.isPresent()) {
+            throw new IllegalStateException("Book is already lent from " + conflict.get().getStartDate()
+                    + " to " + conflict.get().getExpectedReturnDate());
+        }
 
         BorrowRequest request = new BorrowRequest(studentUsername, bookId, startDate, endDate);
         borrowRepository.saveRequest(request);
         return request;
     }
 
+    /**
+     * Earliest start date, from the given day on, for which the book is free
+     * for the given number of days. Books out of circulation have none.
+     */
+    public Optional<LocalDate> findEarliestAvailableStart(String bookId, LocalDate from, int days) {
+        Optional<Book> bookOpt = bookRepository.findById(bookId);
+        if (bookOpt.isEmpty() || (!bookOpt.get().isAvailable() && !borrowRepository.hasActiveLoans(bookId))) {
+            return Optional.empty();
+        }
+        return Optional.of(borrowRepository.findEarliestFreeStart(bookId, from, days));
+    }
+
     /**
      * Get pending requests for today or yesterday
      */
@@ -69,18 +88,33 @@ public class BorrowService {
     }
 
     /**
-     * Approve a borrow request
+     * Get pending requests starting within the given window (inclusive)
+     */
+    public List<BorrowRequest> getPendingRequestsBetween(LocalDate from, LocalDate to) {
+        return borrowRepository.findPendingRequestsBetween(from, to);
+    }
+
+    /**
+     * Get pending requests starting today or within the next given days
+     */
+    public List<BorrowRequest> getPendingRequestsForNextDays(int days) {
+        LocalDate today = LocalDate.now();
+        return borrowRepository.findPendingRequestsBetween(today, today.plusDays(Math.max(days, 0)));
+    }
+
+    /**
+     * Approve a borrow request.
+     * The request moves from PENDING with compare-and-set and its loan window
+     * is committed against the book's other unreturned loans in one step, so
+     * of two concurrent approvals for the same request or overlapping dates
+     * only one succeeds; the other returns false at once.
      */
     public boolean approveRequest(String requestId, String staffUsername) {
-        Optional<BorrowRequest> requestOpt = borrowRepository.findRequestById(requestId);
-        if (requestOpt.isEmpty()) {
+        BorrowRequest request = borrowRepository.getRequest(requestId);
+        if (request == null || !request.tryApprove(staffUsername)) {
             return false;
         }
 
-        BorrowRequest request = requestOpt.get();
-        request.approve(staffUsername);
-        borrowRepository.saveRequest(request);
-
         // Create borrow record
         BorrowRecord record = new BorrowRecord(
             request.getRequestId(),
@@ -90,61 +124,132 @@ public class BorrowService {
             request.getEndDate(),
             staffUsername
         );
-        borrowRepository.saveRecord(record);
 
-        // Mark book as unavailable
-        bookRepository.findById(request.getBookId()).ifPresent(book -> {
-            book.setAvailable(false);
-            bookRepository.save(book);
-        });
+        // Claim the window; if the book is gone or lent for those dates, the request stays pending
+        Book book = bookRepository.getById(request.getBookId());
+        if (book == null || !borrowRepository.reserveLoan(book, record)) {
+            request.revertApproval();
+            return false;
+        }
+        borrowRepository.saveApproval(request, record);
+        bookRepository.save(book);
 
         // Update staff statistics
-        userRepository.findByUsername(staffUsername).ifPresent(user -> {
-            if (user instanceof Staff) {
-                ((Staff) user).incrementBooksLent();
-                userRepository.save(user);
-            }
-        });
+        staffService.reconcileActivity(staffUsername);
 
         return true;
     }
 
     /**
-     * Return a borrowed book
+     * Return a borrowed book.
+     * Only the first of several concurrent returns of a record succeeds.
      */
     public boolean returnBook(String recordId, String staffUsername) {
-        Optional<BorrowRecord> recordOpt = borrowRepository.findRecordById(recordId);
-        if (recordOpt.isEmpty()) {
+        BorrowRecord record = borrowRepository.getRecord(recordId);
+        if (record == null || !record.markReturned(staffUsername, LocalDateTime.now())) {
             return false;
         }
-
-        BorrowRecord record = recordOpt.get();
-        if (record.isReturned()) {
-            return false;
-        }
-
-        record.setActualReturnDate(LocalDateTime.now());
-        record.setReceivedBy(staffUsername);
-        record.setReturned(true);
         borrowRepository.saveRecord(record);
 
-        // Mark book as available
-        bookRepository.findById(record.getBookId()).ifPresent(book -> {
-            book.setAvailable(true);
+        // Mark book as available unless it is lent again
+        Book book = bookRepository.getById(record.getBookId());
+        if (book != null && borrowRepository.releaseBookIfFree(book)) {
             bookRepository.save(book);
-        });
+        }
 
         // Update staff statistics
-        userRepository.findByUsername(staffUsername).ifPresent(user -> {
-            if (user instanceof Staff) {
-                ((Staff) user).incrementBooksReceived();
-                userRepository.save(user);
-            }
-        });
+        staffService.reconcileActivity(staffUsername);
 
         return true;
     }
 
+    /**
+     * Approve several requests in one pass.
+     * Requests and books are looked up together, the staff counter is
+     * updated once and the change log is synced once at the end. The result
+     * holds one entry per ID, in order: true where that request was approved.
+     */
+    public boolean[] approveRequests(Collection<String> requestIds, String staffUsername) {
+        List<String> ids = new ArrayList<>(requestIds);
+        boolean[] results = new boolean[ids.size()];
+        Map<String, BorrowRequest> requests = borrowRepository.findRequestsByIds(ids);
+        Set<String> bookIds = new HashSet<>();
+        for (BorrowRequest request : requests.values()) {
+            bookIds.add(request.getBookId());
+        }
+        Map<String, Book> books = bookRepository.findByIds(bookIds);
+
+        List<Book> lentBooks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            BorrowRequest request = requests.get(ids.get(i));
+            if (request == null || !request.tryApprove(staffUsername)) {
+                continue;
+            }
+            BorrowRecord record = new BorrowRecord(
+                request.getRequestId(),
+                request.getStudentUsername(),
+                request.getBookId(),
+                request.getStartDate(),
+                request.getEndDate(),
+                staffUsername
+            );
+            Book book = books.get(request.getBookId());
+            if (book == null || !borrowRepository.reserveLoan(book, record)) {
+                request.revertApproval();
+                continue;
+            }
+            borrowRepository.saveApproval(request, record);
+            lentBooks.add(book);
+            results[i] = true;
+        }
+        bookRepository.saveAll(lentBooks);
+
+        if (!lentBooks.isEmpty()) {
+            staffService.reconcileActivity(staffUsername);
+        }
+        borrowRepository.sync();
+        return results;
+    }
+
+    /**
+     * Return several borrowed books in one pass, with the same batching as
+     * approveRequests. The result holds one entry per record ID, in order.
+     */
+    public boolean[] returnBooks(Collection<String> recordIds, String staffUsername) {
+        List<String> ids = new ArrayList<>(recordIds);
+        boolean[] results = new boolean[ids.size()];
+        Map<String, BorrowRecord> records = borrowRepository.findRecordsByIds(ids);
+        LocalDateTime now = LocalDateTime.now();
+
+        List<BorrowRecord> returned = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            BorrowRecord record = records.get(ids.get(i));
+            if (record != null && record.markReturned(staffUsername, now)) {
+                returned.add(record);
+                results[i] = true;
+            }
+        }
+        borrowRepository.saveRecords(returned);
+
+        Set<String> bookIds = new HashSet<>();
+        for (BorrowRecord record : returned) {
+            bookIds.add(record.getBookId());
+        }
+        List<Book> freedBooks = new ArrayList<>();
+        for (Book book : bookRepository.findByIds(bookIds).values()) {
+            if (borrowRepository.releaseBookIfFree(book)) {
+                freedBooks.add(book);
+            }
+        }
+        bookRepository.saveAll(freedBooks);
+
+        if (!returned.isEmpty()) {
+            staffService.reconcileActivity(staffUsername);
+        }
+        borrowRepository.sync();
+        return results;
+    }
+
     /**
      * Get borrow history for a student
      */
@@ -159,6 +264,20 @@ public class BorrowService {
         return borrowRepository.findActiveRecords();
     }
 
+    /**
+     * Get the number of loans that are past their expected return date
+     */
+    public long getOverdueCount() {
+        return borrowRepository.countOverdueRecords(LocalDate.now());
+    }
+
+    /**
+     * Get the most overdue loans first, up to the given limit
+     */
+    public List<BorrowRecord> getOverdueBorrows(int limit) {
+        return borrowRepository.findOverdueRecords(LocalDate.now(), limit);
+    }
+
     /**
      * Get total request count
      */
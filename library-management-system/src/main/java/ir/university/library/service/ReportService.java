@@ -10,6 +10,12 @@ import java.util.stream.Collectors;
  * Service for generating reports and statistics
  */
 public class ReportService {
+    // Slots of the per-student counters used by the parallel aggregation
+    private static final int RETURNED = 0;
+    private static final int NOT_RETURNED = 1;
+    private static final int LATE = 2;
+    private static final int DELAY_DAYS = 3;
+
     private final UserRepository userRepository;
     private final BookRepository bookRepository;
     private final BorrowRepository borrowRepository;
@@ -24,17 +30,18 @@ public class ReportService {
      * Get student statistics
      */
     public StudentStats getStudentStats(String studentUsername) {
-        List<BorrowRecord> records = borrowRepository.findRecordsByStudent(studentUsername);
-        
-        long totalBorrows = records.size();
-        long notReturned = records.stream().filter(r -> !r.isReturned()).count();
-        long lateReturns = records.stream().filter(BorrowRecord::isReturnedLate).count();
+        BorrowStatistics statistics = borrowRepository.getStatistics();
+
+        long totalBorrows = statistics.getStudentBorrowCount(studentUsername);
+        long notReturned = statistics.getStudentNotReturnedCount(studentUsername);
+        long lateReturns = statistics.getStudentLateReturnCount(studentUsername);
 
         return new StudentStats(studentUsername, totalBorrows, notReturned, lateReturns);
     }
 
     /**
-     * Get staff performance
+     * Get staff performance from the repositories' activity counts; the
+     * stored Staff counters are neither read nor updated
      */
     public StaffPerformance getStaffPerformance(String staffUsername) {
         Optional<User> userOpt = userRepository.findByUsername(staffUsername);
@@ -42,33 +49,21 @@ public class ReportService {
             return null;
         }
 
-        Staff staff = (Staff) userOpt.get();
-        return new StaffPerformance(
-            staffUsername,
-            staff.getBooksRegistered(),
-            staff.getBooksLent(),
-            staff.getBooksReceived()
-        );
+        return new StaffPerformance(staffUsername,
+                (int) bookRepository.countByRegisteredBy(staffUsername),
+                (int) borrowRepository.countRecordsByLentBy(staffUsername),
+                (int) borrowRepository.countRecordsByReceivedBy(staffUsername));
     }
 
     /**
      * Get borrow statistics
      */
     public BorrowStats getBorrowStats() {
-        long totalRequests = borrowRepository.countAllRequests();
-        long approvedBorrows = borrowRepository.findAllRecords().size();
-        
-        List<BorrowRecord> returnedRecords = borrowRepository.findAllRecords().stream()
-                .filter(BorrowRecord::isReturned)
-                .collect(Collectors.toList());
+        BorrowStatistics statistics = borrowRepository.getStatistics();
 
-        double avgDuration = 0;
-        if (!returnedRecords.isEmpty()) {
-            avgDuration = returnedRecords.stream()
-                    .mapToLong(BorrowRecord::getBorrowDuration)
-                    .average()
-                    .orElse(0.0);
-        }
+        long totalRequests = borrowRepository.countAllRequests();
+        long approvedBorrows = statistics.getTotalRecords();
+        double avgDuration = statistics.getAverageBorrowDuration();
 
         return new BorrowStats(totalRequests, approvedBorrows, avgDuration);
     }
@@ -77,30 +72,146 @@ public class ReportService {
      * Get top 10 students with most delays
      */
     public List<StudentDelayInfo> getTop10StudentsWithMostDelays() {
-        Map<String, Long> studentDelays = new HashMap<>();
-        
-        for (BorrowRecord record : borrowRepository.findAllRecords()) {
-            if (record.isReturnedLate()) {
-                String student = record.getStudentUsername();
-                long delay = record.getDelayDays();
-                studentDelays.put(student, studentDelays.getOrDefault(student, 0L) + delay);
-            }
-        }
+        return getTopStudentsWithMostDelays(10);
+    }
+
+    /**
+     * Get the top k students with most delays, ties ordered by username
+     */
+    public List<StudentDelayInfo> getTopStudentsWithMostDelays(int k) {
+        return getTopStudentsWithMostDelays(k, null);
+    }
 
-        return studentDelays.entrySet().stream()
-                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-                .limit(10)
+    /**
+     * Get the top k students with most delays, ties ordered by the given comparator
+     */
+    public List<StudentDelayInfo> getTopStudentsWithMostDelays(int k, Comparator<String> tieBreaker) {
+        return borrowRepository.getStatistics().getTopDelayedStudents(k, tieBreaker).stream()
                 .map(entry -> new StudentDelayInfo(entry.getKey(), entry.getValue()))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Get late return statistics over every returned record, including archived ones
+     */
+    public LateReturnStats getLateReturnStats() {
+        ReturnTotals totals = borrowRepository.aggregateReturnedRecords(ReturnTotals::new, ReturnTotals::merge);
+        return new LateReturnStats(totals.returned, totals.late, totals.delayDays, totals.maxDelay);
+    }
+
+    /**
+     * Recompute the borrow statistics from the full history on every core,
+     * instead of reading the running totals
+     */
+    public BorrowStats computeBorrowStats() {
+        ReturnTotals totals = borrowRepository.aggregateReturnedRecords(ReturnTotals::new, ReturnTotals::merge);
+        double avgDuration = totals.returned == 0 ? 0.0 : (double) totals.durationDays / totals.returned;
+        return new BorrowStats(borrowRepository.countAllRequests(), borrowRepository.countAllRecords(), avgDuration);
+    }
+
+    /**
+     * Recompute every student's statistics from the full history in parallel.
+     * Only returned records with a return date count towards late returns.
+     */
+    public Map<String, StudentStats> computeStudentStats() {
+        StudentTotals totals = borrowRepository.aggregateReturnedRecords(StudentTotals::new, StudentTotals::merge);
+        for (BorrowRecord record : borrowRepository.findActiveRecords()) {
+            totals.get(record.getStudentUsername())[NOT_RETURNED]++;
+        }
+        Map<String, StudentStats> result = new HashMap<>();
+        totals.byStudent.forEach((username, counts) -> result.put(username,
+                new StudentStats(username, counts[RETURNED] + counts[NOT_RETURNED],
+                        counts[NOT_RETURNED], counts[LATE])));
+        return result;
+    }
+
+    /**
+     * Recompute the delay ranking from the full history in parallel,
+     * ties ordered by username
+     */
+    public List<StudentDelayInfo> computeTopStudentsWithMostDelays(int k) {
+        StudentTotals totals = borrowRepository.aggregateReturnedRecords(StudentTotals::new, StudentTotals::merge);
+        return totals.byStudent.entrySet().stream()
+                .filter(entry -> entry.getValue()[DELAY_DAYS] > 0)
+                .sorted(Comparator.<Map.Entry<String, long[]>>comparingLong(entry -> -entry.getValue()[DELAY_DAYS])
+                        .thenComparing(Map.Entry::getKey))
+                .limit(Math.max(k, 0))
+                .map(entry -> new StudentDelayInfo(entry.getKey(), entry.getValue()[DELAY_DAYS]))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Per-partition totals over returned records, merged pairwise
+     */
+    private static final class ReturnTotals implements ReturnedRecordVisitor {
+        long returned;
+        long late;
+        long delayDays;
+        long maxDelay;
+        long durationDays;
+
+        @Override
+        public void visit(String studentUsername, String bookId, long startDay, long expectedReturnDay, long returnDay) {
+            returned++;
+            durationDays += returnDay - startDay;
+            if (returnDay > expectedReturnDay) {
+                long delay = returnDay - expectedReturnDay;
+                late++;
+                delayDays += delay;
+                maxDelay = Math.max(maxDelay, delay);
+            }
+        }
+
+        ReturnTotals merge(ReturnTotals other) {
+            returned += other.returned;
+            late += other.late;
+            delayDays += other.delayDays;
+            maxDelay = Math.max(maxDelay, other.maxDelay);
+            durationDays += other.durationDays;
+            return this;
+        }
+    }
+
+    /**
+     * Per-partition counters for each student, merged pairwise
+     */
+    private static final class StudentTotals implements ReturnedRecordVisitor {
+        final Map<String, long[]> byStudent = new HashMap<>();
+
+        long[] get(String username) {
+            return byStudent.computeIfAbsent(username, key -> new long[4]);
+        }
+
+        @Override
+        public void visit(String studentUsername, String bookId, long startDay, long expectedReturnDay, long returnDay) {
+            long[] counts = get(studentUsername);
+            counts[RETURNED]++;
+            if (returnDay > expectedReturnDay) {
+                counts[LATE]++;
+                counts[DELAY_DAYS] += returnDay - expectedReturnDay;
+            }
+        }
+
+        StudentTotals merge(StudentTotals other) {
+            StudentTotals larger = byStudent.size() >= other.byStudent.size() ? this : other;
+            StudentTotals smaller = larger == this ? other : this;
+            smaller.byStudent.forEach((username, counts) -> {
+                long[] target = larger.get(username);
+                for (int i = 0; i < counts.length; i++) {
+                    target[i] += counts[i];
+                }
+            });
+            return larger;
+        }
+    }
+
     /**
      * Get general statistics
      */
     public GeneralStats getGeneralStats() {
         long totalStudents = userRepository.countStudents();
         long totalBooks = bookRepository.countAll();
-        long totalBorrows = borrowRepository.findAllRecords().size();
+        long totalBorrows = borrowRepository.countAllRecords();
         long activeBorrows = borrowRepository.countActiveRecords();
 
         return new GeneralStats(totalStudents, totalBooks, totalBorrows, activeBorrows);
@@ -157,6 +268,27 @@ public class ReportService {
         }
     }
 
+    public static class LateReturnStats {
+        public final long returnedRecords;
+        public final long lateReturns;
+        public final long totalDelayDays;
+        public final long maxDelayDays;
+
+        public LateReturnStats(long returnedRecords, long lateReturns, long totalDelayDays, long maxDelayDays) {
+            this.returnedRecords = returnedRecords;
+            this.lateReturns = lateReturns;
+            this.totalDelayDays = totalDelayDays;
+            this.maxDelayDays = maxDelayDays;
+        }
+
+        /**
+         * Average delay in days over late returns (0 if none)
+         */
+        public double getAverageDelayDays() {
+            return lateReturns == 0 ? 0.0 : (double) totalDelayDays / lateReturns;
+        }
+    }
+
     public static class GeneralStats {
         public final long totalStudents;
         public final long totalBooks;
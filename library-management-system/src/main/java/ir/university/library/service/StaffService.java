@@ -2,6 +2,8 @@ package ir.university.library.service;
 
 import ir.university.library.model.Staff;
 import ir.university.library.model.User;
+import ir.university.library.repository.BookRepository;
+import ir.university.library.repository.BorrowRepository;
 import ir.university.library.repository.UserRepository;
 
 import java.util.List;
@@ -12,9 +14,13 @@ import java.util.Optional;
  */
 public class StaffService {
     private final UserRepository userRepository;
+    private final BookRepository bookRepository;
+    private final BorrowRepository borrowRepository;
 
     public StaffService() {
         this.userRepository = UserRepository.getInstance();
+        this.bookRepository = BookRepository.getInstance();
+        this.borrowRepository = BorrowRepository.getInstance();
     }
 
     /**
@@ -70,18 +76,34 @@ public class StaffService {
         return false;
     }
 
+    /**
+     * Copy the staff member's counts from the activity index into the Staff
+     * fields and save them. Called after every change to those counts; each
+     * copy reads the index under the staff lock, so a slower caller cannot
+     * overwrite newer counts with older ones.
+     */
+    public void reconcileActivity(String username) {
+        getStaffByUsername(username).ifPresent(staff -> {
+            synchronized (staff) {
+                staff.setBooksRegistered((int) bookRepository.countByRegisteredBy(username));
+                staff.setBooksLent((int) borrowRepository.countRecordsByLentBy(username));
+                staff.setBooksReceived((int) borrowRepository.countRecordsByReceivedBy(username));
+                userRepository.save(staff);
+            }
+        });
+    }
+
     /**
      * Get staff performance statistics
      */
     public StaffPerformance getStaffPerformance(String username) {
         Optional<Staff> staffOpt = getStaffByUsername(username);
         if (staffOpt.isPresent()) {
-            Staff staff = staffOpt.get();
             return new StaffPerformance(
                 username,
-                staff.getBooksRegistered(),
-                staff.getBooksLent(),
-                staff.getBooksReceived()
+                (int) bookRepository.countByRegisteredBy(username),
+                (int) borrowRepository.countRecordsByLentBy(username),
+                (int) borrowRepository.countRecordsByReceivedBy(username)
             );
         }
         return null;
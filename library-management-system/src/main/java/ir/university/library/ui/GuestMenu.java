@@ -63,6 +63,13 @@ public class GuestMenu {
         String title = ConsoleUtils.readLine("Enter book title: ");
         
         List<Book> books = bookService.searchByTitle(title);
+        if (books.isEmpty() && !title.isBlank()) {
+            // Fall back to typo-tolerant matching before giving up
+            books = bookService.fuzzySearch(title);
+            if (!books.isEmpty()) {
+                ConsoleUtils.printInfo("No exact matches. Showing similar titles and authors.");
+            }
+        }
         
         if (books.isEmpty()) {
             ConsoleUtils.printInfo("No books found.");
@@ -86,6 +93,7 @@ public class GuestMenu {
         
         System.out.println("Total Students: " + stats.totalStudents);
         System.out.println("Total Books: " + stats.totalBooks);
+        System.out.println("Available Books: " + bookService.getAvailableBookCount());
         System.out.println("Total Borrows: " + stats.totalBorrows);
         System.out.println("Currently Borrowed Books: " + stats.activeBorrows);
     }
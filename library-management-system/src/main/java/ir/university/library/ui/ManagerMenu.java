@@ -11,6 +11,8 @@ import java.util.List;
  * Menu interface for manager users
  */
 public class ManagerMenu {
+    private static final int PAGE_SIZE = 20;
+
     private final Manager manager;
     private final UserRepository userRepository;
     private final ReportService reportService;
@@ -29,6 +31,7 @@ public class ManagerMenu {
             System.out.println("3. View borrow statistics");
             System.out.println("4. View student statistics");
             System.out.println("5. View all staff members");
+            System.out.println("6. View all students");
             System.out.println("0. Logout");
             ConsoleUtils.printSeparator();
 
@@ -50,6 +53,9 @@ public class ManagerMenu {
                 case 5:
                     viewAllStaff();
                     break;
+                case 6:
+                    viewAllStudents();
+                    break;
                 case 0:
                     return;
                 default:
@@ -115,19 +121,24 @@ public class ManagerMenu {
         System.out.println("Total Requests: " + stats.totalRequests);
         System.out.println("Approved Borrows: " + stats.approvedBorrows);
         System.out.printf("Average Borrow Duration: %.2f days%n", stats.avgBorrowDuration);
+
+        ReportService.LateReturnStats lateStats = reportService.getLateReturnStats();
+        System.out.println("Late Returns: " + lateStats.lateReturns + " of " + lateStats.returnedRecords);
+        System.out.printf("Average Delay: %.2f days (max %d)%n",
+                lateStats.getAverageDelayDays(), lateStats.maxDelayDays);
     }
 
     private void viewStudentStats() {
         ConsoleUtils.printHeader("Student Statistics");
         
-        List<Student> students = userRepository.findAllStudents();
+        long studentCount = userRepository.countStudents();
 
-        if (students.isEmpty()) {
+        if (studentCount == 0) {
             ConsoleUtils.printInfo("No students found.");
             return;
         }
 
-        System.out.println("Total Students: " + students.size());
+        System.out.println("Total Students: " + studentCount);
         ConsoleUtils.printSeparator();
 
         // Show top 10 students with most delays
@@ -169,23 +180,54 @@ public class ManagerMenu {
 
     private void viewAllStaff() {
         ConsoleUtils.printHeader("All Staff Members");
-        
-        List<Staff> staffList = userRepository.findAllStaff();
 
-        if (staffList.isEmpty()) {
+        List<Staff> page = userRepository.page(Staff.class, null, PAGE_SIZE);
+        if (page.isEmpty()) {
             ConsoleUtils.printInfo("No staff members found.");
             return;
         }
 
-        System.out.println("Total Staff: " + staffList.size());
         ConsoleUtils.printSeparator();
+        while (true) {
+            for (Staff staff : page) {
+                System.out.println("Username: " + staff.getUsername());
+                System.out.println("Staff ID: " + staff.getStaffId());
+                System.out.println("Name: " + staff.getFullName());
+                System.out.println("Active: " + (staff.isActive() ? "Yes" : "No"));
+                ConsoleUtils.printSeparator();
+            }
+            if (page.size() < PAGE_SIZE || !nextPage()) {
+                return;
+            }
+            page = userRepository.page(Staff.class, page.get(page.size() - 1).getUsername(), PAGE_SIZE);
+        }
+    }
 
-        for (Staff staff : staffList) {
-            System.out.println("Username: " + staff.getUsername());
-            System.out.println("Staff ID: " + staff.getStaffId());
-            System.out.println("Name: " + staff.getFullName());
-            System.out.println("Active: " + (staff.isActive() ? "Yes" : "No"));
-            ConsoleUtils.printSeparator();
+    private void viewAllStudents() {
+        ConsoleUtils.printHeader("All Students");
+
+        List<Student> page = userRepository.page(Student.class, null, PAGE_SIZE);
+        if (page.isEmpty()) {
+            ConsoleUtils.printInfo("No students found.");
+            return;
         }
+
+        System.out.println("Total Students: " + userRepository.countStudents());
+        ConsoleUtils.printSeparator();
+        while (true) {
+            for (Student student : page) {
+                System.out.println(student.getUsername() + " | " + student.getStudentId() + " | "
+                        + student.getFullName() + " | " + (student.isActive() ? "Active" : "Inactive"));
+            }
+            if (page.size() < PAGE_SIZE || !nextPage()) {
+                return;
+            }
+            page = userRepository.page(Student.class, page.get(page.size() - 1).getUsername(), PAGE_SIZE);
+        }
+    }
+
+    private boolean nextPage() {
+        String answer = ConsoleUtils.readLine("Press Enter for the next page, or q to stop: ");
+        return !answer.equalsIgnoreCase("q");
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,7 @@ import ir.university.library.service.*;
 import ir.university.library.util.ConsoleUtils;
 import ir.university.library.repository.UserRepository;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,6 +39,7 @@ public class StaffMenu {
             System.out.println("5. View student history");
             System.out.println("6. Activate/Deactivate student");
             System.out.println("7. Return borrowed book");
+            System.out.println("8. Print pick list for upcoming borrows");
             System.out.println("0. Logout");
             ConsoleUtils.printSeparator();
 
@@ -65,6 +67,9 @@ public class StaffMenu {
                 case 7:
                     returnBook();
                     break;
+                case 8:
+                    printPickList();
+                    break;
                 case 0:
                     return;
                 default:
@@ -115,8 +120,14 @@ public class StaffMenu {
     private void searchAndEditBook() {
         ConsoleUtils.printHeader("Search and Edit Book");
         
-        String title = ConsoleUtils.readLine("Enter book title to search: ");
-        List<Book> books = bookService.searchByTitle(title);
+        String query = ConsoleUtils.readLine("Enter book title or ISBN to search: ");
+        // A scanned or typed ISBN goes straight to its book
+        Optional<Book> byIsbn = bookService.findByIsbn(query);
+        if (byIsbn.isPresent()) {
+            editBook(byIsbn.get());
+            return;
+        }
+        List<Book> books = bookService.searchByTitle(query);
 
         if (books.isEmpty()) {
             ConsoleUtils.printInfo("No books found.");
@@ -159,13 +170,19 @@ public class StaffMenu {
             }
         }
 
-        boolean success = bookService.updateBook(
-            book.getBookId(),
-            newTitle.isEmpty() ? null : newTitle,
-            newAuthor.isEmpty() ? null : newAuthor,
-            newYear,
-            newIsbn.isEmpty() ? null : newIsbn
-        );
+        boolean success;
+        try {
+            success = bookService.updateBook(
+                book.getBookId(),
+                newTitle.isEmpty() ? null : newTitle,
+                newAuthor.isEmpty() ? null : newAuthor,
+                newYear,
+                newIsbn.isEmpty() ? null : newIsbn
+            );
+        } catch (IllegalArgumentException e) {
+            ConsoleUtils.printError("Error: " + e.getMessage());
+            return;
+        }
 
         if (success) {
             ConsoleUtils.printSuccess("Book updated successfully!");
@@ -198,13 +215,20 @@ public class StaffMenu {
             ConsoleUtils.printSeparator();
         }
 
-        String requestId = ConsoleUtils.readLine("\nEnter Request ID to approve (or 'cancel'): ");
+        String input = ConsoleUtils.readLine("\nEnter Request ID(s) to approve, comma-separated (or 'cancel'): ");
         
-        if (requestId.equalsIgnoreCase("cancel")) {
+        if (input.equalsIgnoreCase("cancel")) {
+            return;
+        }
+
+        List<String> requestIds = parseIds(input);
+        if (requestIds.size() > 1) {
+            boolean[] results = borrowService.approveRequests(requestIds, staff.getUsername());
+            printBatchResults(requestIds, results, "approved", "could not be approved");
             return;
         }
 
-        boolean success = borrowService.approveRequest(requestId, staff.getUsername());
+        boolean success = borrowService.approveRequest(input.trim(), staff.getUsername());
         
         if (success) {
             ConsoleUtils.printSuccess("Request approved successfully!");
@@ -213,6 +237,28 @@ public class StaffMenu {
         }
     }
 
+    private static List<String> parseIds(String input) {
+        List<String> ids = new ArrayList<>();
+        for (String part : input.split(",")) {
+            if (!part.isBlank()) {
+                ids.add(part.trim());
+            }
+        }
+        return ids;
+    }
+
+    private static void printBatchResults(List<String> ids, boolean[] results, String success, String failure) {
+        int succeeded = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            if (results[i]) {
+                succeeded++;
+            } else {
+                ConsoleUtils.printError(ids.get(i) + " " + failure);
+            }
+        }
+        ConsoleUtils.printSuccess(succeeded + " of " + ids.size() + " " + success);
+    }
+
     private void viewStudentHistory() {
         ConsoleUtils.printHeader("Student Borrow History");
         
@@ -289,13 +335,20 @@ public class StaffMenu {
             ConsoleUtils.printSeparator();
         }
 
-        String recordId = ConsoleUtils.readLine("\nEnter Record ID to return (or 'cancel'): ");
+        String input = ConsoleUtils.readLine("\nEnter Record ID(s) to return, comma-separated (or 'cancel'): ");
         
-        if (recordId.equalsIgnoreCase("cancel")) {
+        if (input.equalsIgnoreCase("cancel")) {
             return;
         }
 
-        boolean success = borrowService.returnBook(recordId, staff.getUsername());
+        List<String> recordIds = parseIds(input);
+        if (recordIds.size() > 1) {
+            boolean[] results = borrowService.returnBooks(recordIds, staff.getUsername());
+            printBatchResults(recordIds, results, "returned", "could not be returned");
+            return;
+        }
+
+        boolean success = borrowService.returnBook(input.trim(), staff.getUsername());
         
         if (success) {
             ConsoleUtils.printSuccess("Book returned successfully!");
@@ -303,4 +356,27 @@ public class StaffMenu {
             ConsoleUtils.printError("Failed to process return!");
         }
     }
-}
\ No newline at end of file
+
+    private void printPickList() {
+        ConsoleUtils.printHeader("Pick List");
+
+        int days = ConsoleUtils.readInt("Number of days ahead to include: ");
+        List<BorrowRequest> requests = borrowService.getPendingRequestsForNextDays(days);
+
+        if (requests.isEmpty()) {
+            ConsoleUtils.printInfo("No pending requests in this period.");
+            return;
+        }
+
+        System.out.println("Found " + requests.size() + " request(s):");
+        ConsoleUtils.printSeparator();
+
+        for (BorrowRequest request : requests) {
+            Optional<Book> bookOpt = bookService.getBookById(request.getBookId());
+            String bookTitle = bookOpt.map(Book::getTitle).orElse("Unknown");
+
+            System.out.println(request.getStartDate() + " | " + bookTitle + " (" + request.getBookId() + ")"
+                             + " | " + request.getStudentUsername());
+        }
+    }
+}
@@ -7,7 +7,9 @@ import ir.university.library.util.ConsoleUtils;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Menu interface for student users
@@ -57,13 +59,26 @@ public class StudentMenu {
         ConsoleUtils.printHeader("Search Books");
         
         String title = ConsoleUtils.readLine("Enter title (or press Enter to skip): ");
-        String yearStr = ConsoleUtils.readLine("Enter year (or press Enter to skip): ");
+        String yearStr = ConsoleUtils.readLine("Enter year or range, e.g. 1990-2005, 1990- or -2005 (or press Enter to skip): ").trim();
         String author = ConsoleUtils.readLine("Enter author (or press Enter to skip): ");
+        boolean availableOnly = ConsoleUtils.readLine("Only available books? (y/n): ").equalsIgnoreCase("y");
         
-        Integer year = null;
+        Integer fromYear = null;
+        Integer toYear = null;
         if (!yearStr.isEmpty()) {
             try {
-                year = Integer.parseInt(yearStr);
+                int dash = yearStr.indexOf('-');
+                if (dash < 0) {
+                    fromYear = toYear = Integer.parseInt(yearStr);
+                } else {
+                    String from = yearStr.substring(0, dash).trim();
+                    String to = yearStr.substring(dash + 1).trim();
+                    if (from.isEmpty() && to.isEmpty()) {
+                        throw new NumberFormatException(yearStr);
+                    }
+                    fromYear = from.isEmpty() ? null : Integer.parseInt(from);
+                    toYear = to.isEmpty() ? null : Integer.parseInt(to);
+                }
             } catch (NumberFormatException e) {
                 ConsoleUtils.printError("Invalid year format!");
                 return;
@@ -72,9 +87,24 @@ public class StudentMenu {
 
         List<Book> books = bookService.searchBooks(
             title.isEmpty() ? null : title,
-            year,
-            author.isEmpty() ? null : author
+            fromYear,
+            toYear,
+            author.isEmpty() ? null : author,
+            availableOnly
         );
+        if (books.isEmpty() && !(title + author).isBlank()) {
+            // Fall back to typo-tolerant matching on the words typed, keeping the other filters
+            Integer from = fromYear;
+            Integer to = toYear;
+            books = bookService.fuzzySearch(title + " " + author).stream()
+                .filter(book -> !availableOnly || book.isAvailable())
+                .filter(book -> from == null || book.getPublicationYear() >= from)
+                .filter(book -> to == null || book.getPublicationYear() <= to)
+                .collect(Collectors.toList());
+            if (!books.isEmpty()) {
+                ConsoleUtils.printInfo("No exact matches. Showing similar titles and authors.");
+            }
+        }
 
         if (books.isEmpty()) {
             ConsoleUtils.printInfo("No books found.");
@@ -103,15 +133,14 @@ public class StudentMenu {
         
         String bookId = ConsoleUtils.readLine("Enter book ID: ");
         
-        // Verify book exists and is available
+        // Verify book exists; a lent book can still be requested for later dates
         var bookOpt = bookService.getBookById(bookId);
         if (bookOpt.isEmpty()) {
             ConsoleUtils.printError("Book not found!");
             return;
         }
         if (!bookOpt.get().isAvailable()) {
-            ConsoleUtils.printError("Book is not available!");
-            return;
+            ConsoleUtils.printInfo("This book is currently lent.");
         }
 
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
@@ -123,6 +152,27 @@ public class StudentMenu {
             LocalDate startDate = LocalDate.parse(startStr, formatter);
             LocalDate endDate = LocalDate.parse(endStr, formatter);
 
+            // Offer the earliest free window of the same length instead of failing
+            if (!endDate.isBefore(startDate)) {
+                int days = (int) ChronoUnit.DAYS.between(startDate, endDate) + 1;
+                var earliest = borrowService.findEarliestAvailableStart(bookId, startDate, days);
+                if (earliest.isEmpty()) {
+                    ConsoleUtils.printError("Book is not available!");
+                    return;
+                }
+                if (!earliest.get().equals(startDate)) {
+                    LocalDate suggestedEnd = earliest.get().plusDays(days - 1);
+                    ConsoleUtils.printInfo("The book is lent during those dates. Earliest available: "
+                            + earliest.get() + " to " + suggestedEnd);
+                    String answer = ConsoleUtils.readLine("Request these dates instead? (y/n): ");
+                    if (!answer.equalsIgnoreCase("y")) {
+                        return;
+                    }
+                    startDate = earliest.get();
+                    endDate = suggestedEnd;
+                }
+            }
+
             BorrowRequest request = borrowService.createBorrowRequest(
                 student.getUsername(), bookId, startDate, endDate
             );
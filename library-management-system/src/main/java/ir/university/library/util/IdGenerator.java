@@ -0,0 +1,18 @@
+package ir.university.library.util;
+
+/**
+ * Source of unique numeric IDs for books, requests and records
+ */
+public interface IdGenerator {
+
+    /**
+     * A positive ID this generator has not issued before
+     */
+    long nextId();
+
+    /**
+     * Make sure the given ID, issued earlier and restored from storage,
+     * is never issued again
+     */
+    void advancePast(long id);
+}
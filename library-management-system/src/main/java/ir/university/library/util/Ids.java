@@ -0,0 +1,72 @@
+package ir.university.library.util;
+
+/**
+ * Issues entity IDs from the configured generator and converts them
+ * between their numeric form and the compact base-36 string shown in the UI
+ */
+public class Ids {
+    /**
+     * Returned by parse for IDs that were not issued by a generator
+     */
+    public static final long NONE = -1;
+
+    private static volatile IdGenerator generator = new SequentialIdGenerator();
+
+    private Ids() {
+    }
+
+    public static IdGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Replace the generator; call before any entity is created
+     */
+    public static void setGenerator(IdGenerator idGenerator) {
+        if (idGenerator == null) {
+            throw new IllegalArgumentException("Generator cannot be null");
+        }
+        generator = idGenerator;
+    }
+
+    public static String next() {
+        return format(generator.nextId());
+    }
+
+    public static String format(long id) {
+        return Long.toString(id, Character.MAX_RADIX);
+    }
+
+    /**
+     * The numeric value of an ID in canonical base-36 form, or NONE
+     */
+    public static long parse(String id) {
+        if (id == null || id.isEmpty() || id.length() > 13) {
+            return NONE;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'z')) {
+                return NONE;
+            }
+        }
+        if (id.length() > 1 && id.charAt(0) == '0') {
+            return NONE;
+        }
+        try {
+            return Long.parseLong(id, Character.MAX_RADIX);
+        } catch (NumberFormatException e) {
+            return NONE;
+        }
+    }
+
+    /**
+     * Keep the generator from issuing an ID already in use
+     */
+    public static void advancePast(String id) {
+        long value = parse(id);
+        if (value != NONE) {
+            generator.advancePast(value);
+        }
+    }
+}
@@ -63,6 +63,40 @@ public class InputValidator {
         return ISBN_PATTERN.matcher(isbn).matches();
     }
     
+    /**
+     * Canonical form of an ISBN for lookups: prefix, hyphens and spaces
+     * removed, upper case, and ISBN-10 converted to its ISBN-13 form.
+     * Values that are not ISBNs are returned stripped the same way;
+     * null or blank input gives null.
+     */
+    public static String normalizeISBN(String isbn) {
+        if (isEmpty(isbn)) {
+            return null;
+        }
+        String value = isbn.trim().toUpperCase();
+        if (value.startsWith("ISBN")) {
+            value = value.substring(4).replaceFirst("^-1[03]", "").replaceFirst("^:", "");
+        }
+        StringBuilder stripped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '-' && c != ' ') {
+                stripped.append(c);
+            }
+        }
+        String result = stripped.toString();
+        if (result.length() == 10 && result.substring(0, 9).chars().allMatch(Character::isDigit)
+                && (Character.isDigit(result.charAt(9)) || result.charAt(9) == 'X')) {
+            String body = "978" + result.substring(0, 9);
+            int sum = 0;
+            for (int i = 0; i < body.length(); i++) {
+                sum += (body.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+            }
+            return body + (10 - sum % 10) % 10;
+        }
+        return result.isEmpty() ? null : result;
+    }
+    
     /**
      * Validate year
      */
@@ -0,0 +1,20 @@
+package ir.university.library.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Issues 1, 2, 3, ... from a single counter; for a single library instance
+ */
+public class SequentialIdGenerator implements IdGenerator {
+    private final AtomicLong last = new AtomicLong();
+
+    @Override
+    public long nextId() {
+        return last.incrementAndGet();
+    }
+
+    @Override
+    public void advancePast(long id) {
+        last.accumulateAndGet(id, Math::max);
+    }
+}
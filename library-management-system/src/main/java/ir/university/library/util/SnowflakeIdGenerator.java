@@ -0,0 +1,45 @@
+package ir.university.library.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake-style IDs for several library instances sharing data:
+ * 41 bits of milliseconds since 2024-01-01, a 10-bit node ID and a 12-bit
+ * per-millisecond sequence. IDs keep increasing on a node even if the
+ * clock steps back; a full sequence borrows the next millisecond.
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+    public static final int MAX_NODE_ID = 1023;
+
+    private static final long EPOCH_MILLIS = 1_704_067_200_000L;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int NODE_BITS = 10;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long nodeBits;
+    // Timestamp and sequence of the last ID, packed as timestamp << 12 | sequence
+    private final AtomicLong lastState = new AtomicLong(-1);
+
+    public SnowflakeIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node ID must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+    }
+
+    @Override
+    public long nextId() {
+        long now = System.currentTimeMillis() - EPOCH_MILLIS;
+        long state = lastState.updateAndGet(last ->
+                now > last >>> SEQUENCE_BITS ? now << SEQUENCE_BITS : last + 1);
+        long timestamp = state >>> SEQUENCE_BITS;
+        return timestamp << (SEQUENCE_BITS + NODE_BITS) | nodeBits | (state & SEQUENCE_MASK);
+    }
+
+    @Override
+    public void advancePast(long id) {
+        long timestamp = id >>> (SEQUENCE_BITS + NODE_BITS);
+        long state = timestamp << SEQUENCE_BITS | (id & SEQUENCE_MASK);
+        lastState.accumulateAndGet(state, Math::max);
+    }
+}
@@ -0,0 +1,227 @@
+package ir.university.library.persistence;
+
+import ir.university.library.model.*;
+import ir.university.library.repository.BookRepository;
+import ir.university.library.repository.BorrowRepository;
+import ir.university.library.repository.UserRepository;
+import ir.university.library.service.BookService;
+import ir.university.library.service.BorrowService;
+import ir.university.library.util.IdGenerator;
+import ir.university.library.util.Ids;
+import ir.university.library.util.SequentialIdGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for write-ahead log and snapshot persistence
+ */
+class PersistenceManagerTest {
+    @TempDir
+    Path dataDirectory;
+
+    private BookRepository bookRepository;
+    private UserRepository userRepository;
+    private BorrowRepository borrowRepository;
+    private PersistenceManager persistence;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        bookRepository = BookRepository.getInstance();
+        userRepository = UserRepository.getInstance();
+        borrowRepository = BorrowRepository.getInstance();
+        persistence = PersistenceManager.open(dataDirectory);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        persistence.close();
+        bookRepository.clear();
+        userRepository.clear();
+        borrowRepository.clear();
+    }
+
+    private void restart() throws IOException {
+        persistence.close();
+        bookRepository.clear();
+        userRepository.clear();
+        borrowRepository.clear();
+        persistence = PersistenceManager.open(dataDirectory);
+    }
+
+    private String createLoan() {
+        userRepository.save(new Student("student1", "pass123", "S001", "Test Student", "s1@test.com"));
+        Book book = new BookService().registerBook("Java Programming", "John Doe", 2020, "ISBN001", "staff1");
+
+        BorrowService borrowService = new BorrowService();
+        LocalDate today = LocalDate.now();
+        BorrowRequest request = borrowService.createBorrowRequest("student1", book.getBookId(), today, today.plusDays(7));
+        borrowService.approveRequest(request.getRequestId(), "staff1");
+        return book.getBookId();
+    }
+
+    @Test
+    @DisplayName("Restored IDs are never issued again")
+    void testIdsAdvancePastRecoveredEntities() throws IOException {
+        String bookId = createLoan();
+        IdGenerator original = Ids.getGenerator();
+        try {
+            // A fresh process starts counting from scratch
+            Ids.setGenerator(new SequentialIdGenerator());
+            restart();
+
+            Book book = new BookService().registerBook("Clean Code", "Robert Martin", 2008, "ISBN002", "staff1");
+            assertNotEquals(bookId, book.getBookId());
+            assertTrue(Ids.parse(book.getBookId()) > Ids.parse(bookId));
+            for (BorrowRecord record : borrowRepository.findAllRecords()) {
+                assertTrue(Ids.parse(book.getBookId()) > Ids.parse(record.getRecordId()));
+            }
+        } finally {
+            Ids.setGenerator(original);
+        }
+    }
+
+    @Test
+    @DisplayName("Mutations survive a restart through the log")
+    void testRecoverFromLog() throws IOException {
+        String bookId = createLoan();
+
+        restart();
+
+        Book book = bookRepository.findById(bookId).orElseThrow();
+        assertEquals("Java Programming", book.getTitle());
+        assertFalse(book.isAvailable());
+        assertTrue(userRepository.existsByUsername("student1"));
+        assertEquals(1, borrowRepository.countAllRequests());
+        assertEquals(1, borrowRepository.countActiveRecords());
+        assertEquals(1, bookRepository.searchByTitle("java").size());
+
+        Staff staff = (Staff) userRepository.findByUsername("staff1").orElseThrow();
+        assertEquals(1, staff.getBooksRegistered());
+        assertEquals(1, staff.getBooksLent());
+    }
+
+    @Test
+    @DisplayName("Passwords are persisted only as salted hashes")
+    void testPasswordsAreNotPersistedInPlaintext() throws IOException {
+        userRepository.save(new Student("student1", "secret-pass", "S001", "Test Student", "s1@test.com"));
+        persistence.sync();
+        persistence.snapshot();
+
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+                assertFalse(content.contains("secret-pass"), file.toString());
+            }
+        }
+
+        restart();
+
+        User student = userRepository.findByUsername("student1").orElseThrow();
+        assertTrue(student.checkPassword("secret-pass"));
+        assertFalse(student.checkPassword("wrong-pass"));
+    }
+
+    @Test
+    @DisplayName("Snapshot replaces covered log segments and the tail is replayed")
+    void testRecoverFromSnapshotAndTail() throws IOException {
+        String bookId = createLoan();
+        persistence.snapshot();
+
+        BorrowRecord record = borrowRepository.findActiveRecords().get(0);
+        new BorrowService().returnBook(record.getRecordId(), "staff2");
+        bookRepository.delete(bookId);
+
+        restart();
+
+        assertTrue(bookRepository.findById(bookId).isEmpty());
+        assertEquals(0, borrowRepository.countActiveRecords());
+        BorrowRecord restored = borrowRepository.findRecordById(record.getRecordId()).orElseThrow();
+        assertTrue(restored.isReturned());
+        assertEquals("staff2", restored.getReceivedBy());
+
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            List<String> names = files.map(path -> path.getFileName().toString()).sorted().toList();
+            assertEquals(1, names.stream().filter(name -> name.startsWith("snapshot-")).count());
+            assertTrue(names.stream().noneMatch(name -> name.equals("wal-0000000000000000.log")));
+        }
+    }
+
+    @Test
+    @DisplayName("A torn entry at the end of the log is discarded")
+    void testTornTailIsIgnored() throws IOException {
+        String bookId = createLoan();
+        persistence.sync();
+
+        Path lastSegment;
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            lastSegment = files.filter(path -> path.getFileName().toString().startsWith("wal-"))
+                    .max(Path::compareTo)
+                    .orElseThrow();
+        }
+        persistence.close();
+        Files.write(lastSegment, new byte[]{0, 0, 1, 0, 42, 42}, StandardOpenOption.APPEND);
+        persistence = PersistenceManager.open(dataDirectory);
+
+        assertTrue(bookRepository.findById(bookId).isPresent());
+        assertEquals(1, borrowRepository.countActiveRecords());
+
+        bookRepository.save(new Book("Clean Code", "Robert Martin", 2008, "ISBN005", "staff1"));
+        restart();
+        assertEquals(2, bookRepository.countAll());
+    }
+
+    private Path lastSegment() throws IOException {
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("wal-"))
+                    .max(Path::compareTo)
+                    .orElseThrow();
+        }
+    }
+
+    @Test
+    @DisplayName("A corrupt entry length is treated as a torn tail, not allocated")
+    void testCorruptLengthIsIgnored() throws IOException {
+        String bookId = createLoan();
+        persistence.sync();
+        Path segment = lastSegment();
+        persistence.close();
+        Files.write(segment, new byte[]{0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, 0, 1, 2},
+                StandardOpenOption.APPEND);
+
+        persistence = PersistenceManager.open(dataDirectory);
+        assertTrue(bookRepository.findById(bookId).isPresent());
+        assertEquals(1, borrowRepository.countActiveRecords());
+    }
+
+    @Test
+    @DisplayName("Corruption before the newest log segment fails recovery")
+    void testCorruptEarlierSegmentFailsRecovery() throws IOException {
+        createLoan();
+        persistence.sync();
+        Path segment = lastSegment();
+        persistence.close();
+        Files.write(segment, new byte[]{0, 0, 1, 0, 42, 42}, StandardOpenOption.APPEND);
+        String name = segment.getFileName().toString();
+        long number = Long.parseLong(name.substring(4, name.length() - 4));
+        Files.createFile(dataDirectory.resolve(String.format("wal-%016d.log", number + 1)));
+        long damagedSize = Files.size(segment);
+
+        assertThrows(IOException.class, () -> PersistenceManager.open(dataDirectory));
+        // Left untouched for inspection
+        assertEquals(damagedSize, Files.size(segment));
+    }
+}
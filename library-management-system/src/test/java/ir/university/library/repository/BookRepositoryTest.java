@@ -6,8 +6,13 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -137,6 +142,103 @@ class BookRepositoryTest {
         assertEquals("Python Programming", results.get(0).getTitle());
     }
 
+    @Test
+    @DisplayName("Search matches substrings inside words")
+    void testSearchMatchesSubstringInsideWord() {
+        Book book1 = new Book("Java Programming", "Author 1", 2024, "ISBN1", "staff1");
+        Book book2 = new Book("Grammar Basics", "Author 2", 2023, "ISBN2", "staff1");
+        Book book3 = new Book("Python Basics", "Author 3", 2022, "ISBN3", "staff1");
+
+        repository.save(book1);
+        repository.save(book2);
+        repository.save(book3);
+
+        assertEquals(2, repository.searchByTitle("gram").size());
+        assertEquals(1, repository.searchByTitle("ing").size());
+        assertEquals(1, repository.searchByTitle("java pro").size());
+        assertEquals(0, repository.searchByTitle("java basics").size());
+    }
+
+    @Test
+    @DisplayName("Search keeps substring semantics across punctuation")
+    void testSearchAcrossPunctuation() {
+        Book book1 = new Book("C++ Primer", "Stanley Lippman", 2012, "ISBN1", "staff1");
+        Book book2 = new Book("Effective C#", "Bill Wagner", 2016, "ISBN2", "staff1");
+
+        repository.save(book1);
+        repository.save(book2);
+
+        assertEquals(1, repository.searchByTitle("++").size());
+        assertEquals(1, repository.searchByTitle("c++ p").size());
+        assertEquals(1, repository.searchByTitle("E C#").size());
+        assertEquals(2, repository.searchByTitle("c").size());
+        assertEquals(0, repository.searchByTitle("primer c").size());
+    }
+
+    @Test
+    @DisplayName("Search reflects updated and deleted books")
+    void testSearchReflectsUpdatesAndDeletes() {
+        Book book = new Book("Java Programming", "John Doe", 2024, "ISBN1", "staff1");
+        repository.save(book);
+
+        book.setTitle("Kotlin in Action");
+        book.setAuthor("Jane Smith");
+        repository.save(book);
+
+        assertTrue(repository.searchByTitle("Java").isEmpty());
+        assertEquals(1, repository.searchByTitle("kotlin").size());
+        assertTrue(repository.search(null, null, "John").isEmpty());
+        assertEquals(1, repository.search(null, null, "smith").size());
+
+        repository.delete(book.getBookId());
+        assertTrue(repository.searchByTitle("Kotlin").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Search follows partial title edits and repeated saves")
+    void testSearchAfterPartialTitleEdit() {
+        Book book = new Book("Java Programming", "John Doe", 2024, "ISBN1", "staff1");
+        repository.save(book);
+        repository.save(book);
+
+        book.setTitle("Java Basics");
+        repository.save(book);
+
+        assertEquals(1, repository.searchByTitle("java").size());
+        assertEquals(1, repository.searchByTitle("basics").size());
+        assertTrue(repository.searchByTitle("programming").isEmpty());
+        assertEquals(1, repository.fuzzySearch("basic").size());
+        assertTrue(repository.fuzzySearch("programming", 0).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Find books by generated and imported IDs after many saves and deletes")
+    void testLookupAfterSavesAndDeletes() {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Book book = new Book("Book " + i, "Author", 2000, "ISBN" + i, "staff1");
+            books.add(book);
+            repository.save(book);
+        }
+        Book imported = new Book("legacy-1", "Imported", "Author", 1999, "ISBN-X",
+                                 true, LocalDateTime.now(), "staff1");
+        repository.save(imported);
+
+        for (int i = 0; i < books.size(); i += 2) {
+            repository.delete(books.get(i).getBookId());
+        }
+
+        assertEquals(2501, repository.countAll());
+        for (int i = 0; i < books.size(); i++) {
+            Book found = repository.getById(books.get(i).getBookId());
+            assertEquals(i % 2 == 0 ? null : books.get(i), found);
+        }
+        assertSame(imported, repository.getById("legacy-1"));
+        assertEquals(2501, repository.stream().count());
+        assertEquals(2501, repository.stream().parallel().filter(Book::isAvailable).count());
+        assertNull(repository.getById("missing"));
+    }
+
     @Test
     @DisplayName("Find available books")
     void testFindAvailableBooks() {
@@ -152,6 +254,50 @@ class BookRepositoryTest {
         assertTrue(availableBooks.get(0).isAvailable());
     }
 
+    @Test
+    @DisplayName("Available-book bitmap follows availability changes, deletes and ordinal reuse")
+    void testAvailabilityBitmap() {
+        // Enough books for the bitmap to switch to its dense representation and back
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 6000; i++) {
+            Book book = new Book((i % 2 == 0 ? "Even " : "Odd ") + i, "Author", 2000, "ISBN" + i, "staff1");
+            repository.save(book);
+            books.add(book);
+        }
+        assertEquals(6000, repository.countAvailable());
+
+        for (int i = 0; i < 6000; i += 3) {
+            books.get(i).setAvailable(false);
+        }
+        assertEquals(4000, repository.countAvailable());
+        assertEquals(4000, repository.findAvailableBooks().size());
+        assertTrue(repository.findAvailableBooks().stream().allMatch(Book::isAvailable));
+
+        // Available-only search intersects the title candidates with the bitmap
+        assertEquals(3000, repository.search("even", null, null).size());
+        assertEquals(2000, repository.search("even", null, null, true).size());
+
+        // Deleting frees ordinals; the books reusing them start from their own state
+        for (int i = 0; i < 3000; i++) {
+            repository.delete(books.get(i).getBookId());
+        }
+        assertEquals(2000, repository.countAvailable());
+        Book lent = new Book("Reused", "Author", 2000, "ISBN-R", "staff1");
+        lent.setAvailable(false);
+        repository.save(lent);
+        assertEquals(2000, repository.countAvailable());
+        lent.setAvailable(true);
+        assertEquals(2001, repository.countAvailable());
+
+        // A replaced copy no longer updates the bitmap
+        Book replacement = new Book(lent.getBookId(), "Reused", "Author", 2000, "ISBN-R",
+                true, LocalDateTime.now(), "staff1");
+        repository.save(replacement);
+        lent.setAvailable(false);
+        assertEquals(2001, repository.countAvailable());
+        assertTrue(repository.search("reused", null, null, true).contains(replacement));
+    }
+
     @Test
     @DisplayName("Count all books")
     void testCountAll() {
@@ -202,4 +348,31 @@ class BookRepositoryTest {
         repository.clear();
         assertEquals(0, repository.countAll());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Concurrent saves keep the store and indexes consistent")
+    void testConcurrentSaves() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        repository.save(new Book("Shared Title " + thread + "-" + i, "Author " + thread,
+                                2000 + i % 20, "ISBN-" + thread + "-" + i, "staff1"));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(2000, repository.countAll());
+        assertEquals(2000, repository.searchByTitle("shared title").size());
+        assertEquals(250, repository.search(null, null, "author 3").size());
+    }
+}
@@ -8,8 +8,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -105,6 +112,83 @@ class BorrowRepositoryTest {
         assertEquals(2, results.size());
     }
 
+    @Test
+    @DisplayName("Find pending requests in a date window")
+    void testFindPendingRequestsBetween() {
+        LocalDate today = LocalDate.now();
+        BorrowRequest req1 = new BorrowRequest("student1", "book1", today, today.plusDays(7));
+        BorrowRequest req2 = new BorrowRequest("student2", "book2", today.plusDays(2), today.plusDays(9));
+        BorrowRequest req3 = new BorrowRequest("student3", "book3", today.plusDays(5), today.plusDays(12));
+        BorrowRequest req4 = new BorrowRequest("student4", "book4", today.plusDays(1), today.plusDays(8));
+        req4.approve("staff1");
+
+        repository.saveRequest(req1);
+        repository.saveRequest(req2);
+        repository.saveRequest(req3);
+        repository.saveRequest(req4);
+
+        List<BorrowRequest> results = repository.findPendingRequestsBetween(today, today.plusDays(3));
+        assertEquals(2, results.size());
+        assertEquals(req1, results.get(0));
+        assertEquals(req2, results.get(1));
+
+        req2.reject("staff1");
+        repository.saveRequest(req2);
+        assertEquals(1, repository.findPendingRequestsBetween(today, today.plusDays(3)).size());
+        assertTrue(repository.findPendingRequestsBetween(today.plusDays(3), today).isEmpty());
+    }
+
+    @Test
+    @DisplayName("A pending request saved with a new start date leaves its old bucket")
+    void testPendingRequestStartDateChange() {
+        LocalDate today = LocalDate.now();
+        BorrowRequest original = new BorrowRequest("student1", "book1", today, today.plusDays(7));
+        repository.saveRequest(original);
+
+        BorrowRequest request = new BorrowRequest(original.getRequestId(), "student1", "book1",
+                today.plusDays(5), today.plusDays(12), BorrowRequest.Status.PENDING,
+                original.getRequestedAt(), null, null);
+        repository.saveRequest(request);
+
+        assertTrue(repository.findPendingRequestsBetween(today, today).isEmpty());
+        assertEquals(List.of(request), repository.findPendingRequestsBetween(today.plusDays(5), today.plusDays(5)));
+    }
+
+    @Test
+    @DisplayName("Pending index follows status changes")
+    void testPendingIndexFollowsStatusChanges() {
+        LocalDate startDate = LocalDate.now();
+        BorrowRequest request = new BorrowRequest("student1", "book1", startDate, startDate.plusDays(7));
+        repository.saveRequest(request);
+        assertEquals(1, repository.findPendingRequests().size());
+
+        request.approve("staff1");
+        repository.saveRequest(request);
+        assertTrue(repository.findPendingRequests().isEmpty());
+
+        request.setStatus(BorrowRequest.Status.PENDING);
+        repository.saveRequest(request);
+        assertEquals(1, repository.findPendingRequests().size());
+        assertEquals(1, repository.countAllRequests());
+    }
+
+    @Test
+    @DisplayName("Re-saving a record under a new student and book moves it between buckets")
+    void testRecordIndexesFollowKeyChanges() {
+        LocalDate startDate = LocalDate.now();
+        BorrowRecord record = new BorrowRecord("req1", "student1", "book1", startDate, startDate.plusDays(7), "staff1");
+        repository.saveRecord(record);
+
+        BorrowRecord corrected = new BorrowRecord(record.getRecordId(), "req1", "student2", "book2",
+                startDate, startDate.plusDays(7), null, "staff1", null, false);
+        repository.saveRecord(corrected);
+
+        assertTrue(repository.findRecordsByStudent("student1").isEmpty());
+        assertTrue(repository.findRecordsByBook("book1").isEmpty());
+        assertEquals(List.of(corrected), repository.findRecordsByStudent("student2"));
+        assertEquals(List.of(corrected), repository.findRecordsByBook("book2"));
+    }
+
     @Test
     @DisplayName("Count all requests")
     void testCountAllRequests() {
@@ -241,6 +325,94 @@ class BorrowRepositoryTest {
         assertEquals(1, repository.countActiveRecords());
     }
 
+    @Test
+    @DisplayName("Save approval indexes request and record together")
+    void testSaveApproval() {
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = startDate.plusDays(7);
+        BorrowRequest request = new BorrowRequest("student1", "book1", startDate, endDate);
+        repository.saveRequest(request);
+
+        request.approve("staff1");
+        BorrowRecord record = new BorrowRecord(request.getRequestId(), "student1", "book1",
+                                               startDate, endDate, "staff1");
+        repository.saveApproval(request, record);
+
+        assertTrue(repository.findPendingRequests().isEmpty());
+        assertEquals(1, repository.findRecordsByStudent("student1").size());
+        assertEquals(1, repository.findRecordsByBook("book1").size());
+        assertEquals(1, repository.countActiveRecords());
+
+        record.setReturned(true);
+        repository.saveRecord(record);
+        assertEquals(0, repository.countActiveRecords());
+        assertTrue(repository.findActiveRecords().isEmpty());
+        assertEquals(1, repository.findRecordsByStudent("student1").size());
+    }
+
+    @Test
+    @DisplayName("Track overdue records by expected return date")
+    void testOverdueRecords() {
+        LocalDate today = LocalDate.now();
+        BorrowRecord late = new BorrowRecord("req1", "student1", "book1",
+                                             today.minusDays(20), today.minusDays(10), "staff1");
+        BorrowRecord slightlyLate = new BorrowRecord("req2", "student2", "book2",
+                                                     today.minusDays(8), today.minusDays(1), "staff1");
+        BorrowRecord onTime = new BorrowRecord("req3", "student3", "book3",
+                                               today, today.plusDays(7), "staff1");
+
+        repository.saveRecord(onTime);
+        repository.saveRecord(slightlyLate);
+        repository.saveRecord(late);
+
+        assertEquals(2, repository.countOverdueRecords(today));
+        List<BorrowRecord> overdue = repository.findOverdueRecords(today, 1);
+        assertEquals(1, overdue.size());
+        assertEquals(late, overdue.get(0));
+        assertEquals(List.of(late, slightlyLate), repository.findOverdueRecords(today, 10));
+        assertTrue(repository.findOverdueRecords(today, -1).isEmpty());
+
+        late.setReturned(true);
+        repository.saveRecord(late);
+        assertEquals(1, repository.countOverdueRecords(today));
+
+        // A week later the on-time loan is overdue as well
+        assertEquals(2, repository.countOverdueRecords(today.plusDays(8)));
+        assertEquals(1, repository.countOverdueRecords(today));
+    }
+
+    @Test
+    @DisplayName("Find loan conflicts and the next free window")
+    void testLoanWindows() {
+        LocalDate today = LocalDate.now();
+        BorrowRecord first = new BorrowRecord("req1", "student1", "book1",
+                                              today.plusDays(2), today.plusDays(5), "staff1");
+        BorrowRecord second = new BorrowRecord("req2", "student2", "book1",
+                                               today.plusDays(8), today.plusDays(12), "staff1");
+        BorrowRecord otherBook = new BorrowRecord("req3", "student3", "book2",
+                                                  today, today.plusDays(30), "staff1");
+        repository.saveRecord(first);
+        repository.saveRecord(second);
+        repository.saveRecord(otherBook);
+
+        assertTrue(repository.hasActiveLoans("book1"));
+        assertFalse(repository.hasActiveLoans("book3"));
+        assertEquals(Optional.of(first), repository.findConflictingLoan("book1", today, today.plusDays(10)));
+        assertEquals(Optional.of(second), repository.findConflictingLoan("book1", today.plusDays(6), today.plusDays(8)));
+        assertTrue(repository.findConflictingLoan("book1", today.plusDays(6), today.plusDays(7)).isEmpty());
+
+        assertEquals(today, repository.findEarliestFreeStart("book1", today, 2));
+        assertEquals(today.plusDays(6), repository.findEarliestFreeStart("book1", today.plusDays(1), 2));
+        assertEquals(today.plusDays(13), repository.findEarliestFreeStart("book1", today, 3));
+        assertEquals(today, repository.findEarliestFreeStart("book3", today, 100));
+
+        // A returned loan frees its window
+        first.setReturned(true);
+        repository.saveRecord(first);
+        assertEquals(today, repository.findEarliestFreeStart("book1", today, 8));
+        assertTrue(repository.findConflictingLoan("book1", today.plusDays(2), today.plusDays(5)).isEmpty());
+    }
+
     @Test
     @DisplayName("Count records by lent by")
     void testCountRecordsByLentBy() {
@@ -311,4 +483,177 @@ class BorrowRepositoryTest {
         assertEquals(0, repository.countAllRequests());
         assertEquals(0, repository.findAllRecords().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Archived records are still found by every query")
+    void testArchiveReturnedRecords() {
+        LocalDate startDate = LocalDate.now().minusDays(20);
+        LocalDate endDate = startDate.plusDays(7);
+
+        BorrowRecord returned = new BorrowRecord("req1", "student1", "book1", startDate, endDate, "staff1");
+        returned.setReturned(true);
+        returned.setReceivedBy("staff2");
+        returned.setActualReturnDate(endDate.plusDays(3).atTime(10, 30));
+        BorrowRecord active = new BorrowRecord("req2", "student1", "book2", startDate, endDate, "staff1");
+        repository.saveRecord(returned);
+        repository.saveRecord(active);
+
+        assertEquals(1, repository.archiveReturnedRecords());
+        assertEquals(1, repository.countArchivedRecords());
+        assertEquals(2, repository.countAllRecords());
+        assertEquals(1, repository.countActiveRecords());
+
+        BorrowRecord restored = repository.findRecordById(returned.getRecordId()).orElseThrow();
+        assertEquals("req1", restored.getRequestId());
+        assertEquals("book1", restored.getBookId());
+        assertEquals(startDate, restored.getStartDate());
+        assertEquals(endDate.plusDays(3).atTime(10, 30), restored.getActualReturnDate());
+        assertEquals("staff2", restored.getReceivedBy());
+        assertTrue(restored.isReturned());
+        assertEquals(3, restored.getDelayDays());
+
+        assertEquals(2, repository.findRecordsByStudent("student1").size());
+        assertEquals(1, repository.findRecordsByBook("book1").size());
+        assertEquals(2, repository.findAllRecords().size());
+        List<String> visited = new ArrayList<>();
+        repository.forEachRecord(record -> visited.add(record.getRequestId()));
+        assertEquals(List.of("req1", "req2"), visited);
+        assertEquals(2, repository.countRecordsByLentBy("staff1"));
+        assertEquals(1, repository.countRecordsByReceivedBy("staff2"));
+        assertEquals(2, repository.getStatistics().getTotalRecords());
+        assertEquals(1, repository.getStatistics().getStudentLateReturnCount("student1"));
+    }
+
+    @Test
+    @DisplayName("Archived records of one book are found across students")
+    void testArchivedRecordsByBook() {
+        LocalDate startDate = LocalDate.now().minusDays(20);
+        LocalDate endDate = startDate.plusDays(7);
+        for (int i = 0; i < 30; i++) {
+            BorrowRecord record = new BorrowRecord("req" + i, "student" + (i % 7), "book" + (i % 4),
+                    startDate, endDate, "staff1");
+            record.setReturned(true);
+            record.setActualReturnDate(endDate.atStartOfDay());
+            repository.saveRecord(record);
+        }
+
+        assertEquals(30, repository.archiveReturnedRecords());
+        assertEquals(8, repository.findRecordsByBook("book0").size());
+        assertEquals(7, repository.findRecordsByBook("book3").size());
+        assertTrue(repository.findRecordsByBook("book9").isEmpty());
+        for (BorrowRecord record : repository.findRecordsByBook("book1")) {
+            assertEquals("book1", record.getBookId());
+        }
+    }
+
+    @Test
+    @DisplayName("Saving an archived record again moves it back to the heap")
+    void testEditArchivedRecord() {
+        LocalDate startDate = LocalDate.now().minusDays(20);
+        LocalDate endDate = startDate.plusDays(7);
+        BorrowRecord record = new BorrowRecord("req1", "student1", "book1", startDate, endDate, "staff1");
+        record.setReturned(true);
+        record.setActualReturnDate(endDate.plusDays(2).atStartOfDay());
+        repository.saveRecord(record);
+        repository.archiveReturnedRecords();
+
+        BorrowRecord archived = repository.findRecordById(record.getRecordId()).orElseThrow();
+        archived.setActualReturnDate(endDate.atStartOfDay());
+        repository.saveRecord(archived);
+
+        assertEquals(0, repository.countArchivedRecords());
+        assertEquals(1, repository.countAllRecords());
+        assertEquals(1, repository.findRecordsByStudent("student1").size());
+        assertEquals(0, repository.getStatistics().getStudentLateReturnCount("student1"));
+        assertEquals(1, repository.getStatistics().getStudentBorrowCount("student1"));
+    }
+
+    @Test
+    @DisplayName("Walks taken while records are archived see every record once")
+    void testFindAllRecordsWhileArchiving() throws Exception {
+        LocalDate startDate = LocalDate.now().minusDays(20);
+        LocalDate endDate = startDate.plusDays(7);
+        List<String> recordIds = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            BorrowRecord record = new BorrowRecord("req" + i, "student" + (i % 7), "book" + i,
+                    startDate, endDate, "staff1");
+            record.setReturned(true);
+            record.setActualReturnDate(endDate.atStartOfDay());
+            repository.saveRecord(record);
+            recordIds.add(record.getRecordId());
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> archiver = executor.submit(() -> {
+                while (!done.get()) {
+                    repository.archiveReturnedRecords();
+                }
+            });
+            Future<?> editor = executor.submit(() -> {
+                for (int i = 0; !done.get(); i = (i + 37) % recordIds.size()) {
+                    repository.findRecordById(recordIds.get(i)).ifPresent(repository::saveRecord);
+                }
+            });
+            for (int walk = 0; walk < 500; walk++) {
+                Set<String> seen = new HashSet<>();
+                for (BorrowRecord record : repository.findAllRecords()) {
+                    assertTrue(seen.add(record.getRecordId()), "visited twice: " + record.getRecordId());
+                }
+                assertEquals(recordIds.size(), seen.size());
+            }
+            done.set(true);
+            archiver.get();
+            editor.get();
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+        assertEquals(2000, repository.countAllRecords());
+    }
+
+    @Test
+    @DisplayName("Concurrent approvals and returns keep indexes and statistics consistent")
+    void testConcurrentSaves() throws Exception {
+        LocalDate startDate = LocalDate.now().minusDays(10);
+        LocalDate endDate = startDate.plusDays(7);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                String student = "student" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        BorrowRequest request = new BorrowRequest(student, "book" + i, startDate, endDate);
+                        repository.saveRequest(request);
+                        request.approve("staff1");
+                        BorrowRecord record = new BorrowRecord(request.getRequestId(), student, "book" + i,
+                                startDate, endDate, "staff1");
+                        repository.saveApproval(request, record);
+                        if (i % 2 == 0) {
+                            record.setReturned(true);
+                            record.setActualReturnDate(endDate.plusDays(1).atStartOfDay());
+                            repository.saveRecord(record);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1600, repository.countAllRequests());
+        assertEquals(0, repository.findPendingRequests().size());
+        assertEquals(1600, repository.countAllRecords());
+        assertEquals(800, repository.countActiveRecords());
+        assertEquals(800, repository.countOverdueRecords(LocalDate.now()));
+        assertEquals(200, repository.findRecordsByStudent("student3").size());
+        assertEquals(8, repository.findRecordsByBook("book7").size());
+        assertEquals(1600, repository.getStatistics().getTotalRecords());
+        assertEquals(100, repository.getStatistics().getStudentLateReturnCount("student5"));
+    }
+}
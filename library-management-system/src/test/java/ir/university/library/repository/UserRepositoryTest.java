@@ -128,4 +128,70 @@ class UserRepositoryTest {
         assertTrue(repository.existsByUsername("staff2"));
         assertTrue(repository.existsByUsername("staff3"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testPageStudentsByUsername() {
+        for (int i = 0; i < 25; i++) {
+            String username = String.format("student%02d", i);
+            repository.save(new Student(username, "pass", "S" + i, "Student " + i, username + "@test.com"));
+        }
+
+        List<Student> first = repository.page(Student.class, null, 10);
+        assertEquals(10, first.size());
+        assertEquals("student00", first.get(0).getUsername());
+        assertEquals("student09", first.get(9).getUsername());
+
+        List<Student> second = repository.page(Student.class, "student09", 10);
+        assertEquals("student10", second.get(0).getUsername());
+        List<Student> last = repository.page(Student.class, "student19", 10);
+        assertEquals(5, last.size());
+        assertTrue(repository.page(Student.class, "student24", 10).isEmpty());
+
+        // Staff pages skip the students in between
+        List<Staff> staff = repository.page(Staff.class, null, 10);
+        assertEquals(3, staff.size());
+        assertEquals(29, repository.page(null, 100).size());
+
+        int[] visited = new int[1];
+        repository.forEach(user -> visited[0]++);
+        assertEquals(29, visited[0]);
+    }
+
+    @Test
+    void testStudentCountersFollowSavesDeletesAndActivation() {
+        Student first = new Student("student1", "pass", "S001", "First", "first@test.com");
+        Student second = new Student("student2", "pass", "S002", "Second", "second@test.com");
+        repository.save(first);
+        repository.save(second);
+        repository.save(second);
+        assertEquals(2, repository.countStudents());
+        assertEquals(2, repository.countActiveStudents());
+        assertEquals(3, repository.findAllStaff().size());
+
+        second.setActive(false);
+        assertEquals(1, repository.countActiveStudents());
+        second.setActive(false);
+        assertEquals(1, repository.countActiveStudents());
+
+        // Replacing a stored student with a new copy detaches the old one
+        Student replacement = new Student("student1", "pass", "S001", "First", "first@test.com");
+        replacement.setActive(false);
+        repository.save(replacement);
+        assertEquals(2, repository.countStudents());
+        assertEquals(0, repository.countActiveStudents());
+        first.setActive(true);
+        first.setActive(false);
+        first.setActive(true);
+        assertEquals(0, repository.countActiveStudents());
+
+        replacement.setActive(true);
+        assertEquals(1, repository.countActiveStudents());
+        repository.delete("student1");
+        assertEquals(1, repository.countStudents());
+        assertEquals(0, repository.countActiveStudents());
+        replacement.setActive(false);
+        replacement.setActive(true);
+        assertEquals(0, repository.countActiveStudents());
+        assertEquals(List.of(second), repository.findAllStudents());
+    }
+}
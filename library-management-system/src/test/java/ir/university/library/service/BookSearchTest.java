@@ -180,4 +180,92 @@ class BookSearchTest {
         
         assertTrue(results.isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Repeated searches are served from the cache until the catalogue changes")
+    void testSearchCacheInvalidation() {
+        BookService.SearchCacheStats before = bookService.getSearchCacheStats();
+        List<Book> first = bookService.searchByTitle("java");
+        List<Book> second = bookService.searchByTitle("JAVA");
+        BookService.SearchCacheStats after = bookService.getSearchCacheStats();
+
+        assertEquals(2, first.size());
+        assertEquals(first.size(), second.size());
+        assertEquals(1, after.hits - before.hits);
+        assertEquals(1, after.misses - before.misses);
+
+        // A new book must show up on the next search
+        bookService.registerBook("Java Concurrency", "Brian Goetz", 2006, "ISBN006", testStaff.getUsername());
+        assertEquals(3, bookService.searchByTitle("java").size());
+
+        // So must an availability change
+        Book lent = second.get(0);
+        bookService.searchByTitle("java");
+        long misses = bookService.getSearchCacheStats().misses;
+        lent.setAvailable(false);
+        List<Book> refreshed = bookService.searchByTitle("java");
+        assertEquals(misses + 1, bookService.getSearchCacheStats().misses);
+        assertFalse(refreshed.stream().filter(b -> b.equals(lent)).findFirst().orElseThrow().isAvailable());
+
+        // A deleted book must not be returned from a cached result
+        bookRepository.delete(lent.getBookId());
+        assertEquals(2, bookService.searchByTitle("java").size());
+    }
+
+    @Test
+    @DisplayName("A missing filter and a filter for the text \"null\" are cached apart")
+    void testSearchCacheKeepsNullFiltersApart() {
+        bookService.registerBook("Null Safety", "Jane Smith", 2020, "ISBN006", testStaff.getUsername());
+
+        assertEquals(3, bookService.searchBooks(null, 2020, null).size());
+        assertEquals(1, bookService.searchBooks("null", 2020, null).size());
+        assertEquals(0, bookService.searchBooks(null, 2020, "null").size());
+    }
+
+    @Test
+    @DisplayName("Search by exact, bounded and open-ended year ranges")
+    void testSearchByYearRange() {
+        // Years in the catalogue: 2020, 2021, 2020, 2022, 2008
+        assertEquals(3, bookService.searchBooks(null, 2020, 2021, null, false).size());
+        assertEquals(2, bookService.searchBooks(null, 2020, 2020, null, false).size());
+        assertEquals(2, bookService.searchBooks(null, 2021, null, null, false).size());
+        assertEquals(1, bookService.searchBooks(null, null, 2010, null, false).size());
+        assertTrue(bookService.searchBooks(null, 2022, 2020, null, false).isEmpty());
+
+        // Combined with text and availability filters
+        assertEquals(2, bookService.searchBooks("java", 2019, null, null, false).size());
+        Book advanced = bookService.searchBooks("advanced", null, null, null, false).get(0);
+        advanced.setAvailable(false);
+        assertEquals(1, bookService.searchBooks("java", 2019, null, null, true).size());
+
+        // Editing the year moves the book to its new place in the index
+        bookService.updateBook(advanced.getBookId(), null, null, 1999, null);
+        assertEquals(1, bookService.searchBooks(null, 1990, 2005, null, false).size());
+        assertEquals(1, bookService.searchBooks(null, 2021, null, null, false).size());
+    }
+
+    @Test
+    @DisplayName("Fuzzy search tolerates typos in titles and authors")
+    void testFuzzySearch() {
+        assertTrue(bookService.searchByTitle("Pythn").isEmpty());
+
+        List<Book> results = bookService.fuzzySearch("Pythn Basiks");
+        assertEquals(1, results.size());
+        assertEquals("Python Basics", results.get(0).getTitle());
+
+        // Words can match the author as well as the title
+        assertEquals("Clean Code", bookService.fuzzySearch("clen martn").get(0).getTitle());
+
+        // Closest matches come first
+        bookService.registerBook("Jave Tips", "Tom Lee", 2023, "ISBN006", testStaff.getUsername());
+        List<Book> java = bookService.fuzzySearch("jave");
+        assertEquals(3, java.size());
+        assertEquals("Jave Tips", java.get(0).getTitle());
+
+        // Short words must match exactly unless a distance is given
+        assertTrue(bookService.fuzzySearch("cod").isEmpty());
+        assertEquals(1, bookService.fuzzySearch("cod", 1).size());
+        assertTrue(bookService.fuzzySearch("").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> bookService.fuzzySearch("java", -1));
+    }
+}
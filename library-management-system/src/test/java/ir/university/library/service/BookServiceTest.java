@@ -8,8 +8,13 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -176,4 +181,85 @@ class BookServiceTest {
         assertTrue(updatedStaff.get() instanceof Staff);
         assertEquals(2, ((Staff) updatedStaff.get()).getBooksRegistered());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testStaffStatisticsFollowActivityIndex() {
+        bookService.registerBook("Book 1", "Author 1", 2024, "ISBN1", testStaff.getUsername());
+        // Drifted counter, e.g. from an old snapshot; the next change overwrites it
+        testStaff.setBooksRegistered(9);
+
+        bookService.registerBook("Book 2", "Author 2", 2023, "ISBN2", testStaff.getUsername());
+
+        Staff stored = (Staff) userRepository.findByUsername(testStaff.getUsername()).orElseThrow();
+        assertEquals(2, stored.getBooksRegistered());
+    }
+
+    @Test
+    void testFindByIsbnAcrossFormats() {
+        Book book = bookService.registerBook("Effective Java", "Joshua Bloch", 2008,
+                "0-321-35668-3", testStaff.getUsername());
+
+        // Same book as ISBN-10 without hyphens, as ISBN-13, and with a prefix
+        assertEquals(book, bookService.findByIsbn("0321356683").orElseThrow());
+        assertEquals(book, bookService.findByIsbn("978-0-321-35668-0").orElseThrow());
+        assertEquals(book, bookService.findByIsbn("ISBN 9780321356680").orElseThrow());
+        assertTrue(bookService.findByIsbn("9780134685991").isEmpty());
+        assertTrue(bookService.findByIsbn("").isEmpty());
+
+        // The ISBN-13 form of an already registered ISBN-10 is a duplicate
+        assertThrows(IllegalArgumentException.class, () ->
+            bookService.registerBook("Copy", "Someone", 2008, "9780321356680", testStaff.getUsername())
+        );
+        assertEquals(1, bookService.getTotalBookCount());
+
+        // Changing the ISBN moves the index entry; the old one becomes free
+        Book other = bookService.registerBook("Java Puzzlers", "Joshua Bloch", 2005,
+                "978-0-321-33678-1", testStaff.getUsername());
+        assertThrows(IllegalArgumentException.class, () ->
+            bookService.updateBook(other.getBookId(), "Renamed", null, 0, "0321356683")
+        );
+        assertEquals("Java Puzzlers", other.getTitle(), "A rejected update must not change the book");
+        assertTrue(bookService.updateBook(book.getBookId(), null, null, 0, "9780134685991"));
+        assertEquals(book, bookService.findByIsbn("978-0-13-468599-1").orElseThrow());
+        assertTrue(bookService.findByIsbn("0321356683").isEmpty());
+
+        bookRepository.delete(book.getBookId());
+        assertTrue(bookService.findByIsbn("9780134685991").isEmpty());
+    }
+
+    @Test
+    void testIsbnClaimsUnderConcurrencyAndDuplicates() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            String title = "Copy " + i;
+            results.add(pool.submit(() -> {
+                start.await();
+                try {
+                    bookService.registerBook(title, "Joshua Bloch", 2008, "0-321-35668-3", testStaff.getUsername());
+                    return true;
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int registered = 0;
+        for (Future<Boolean> result : results) {
+            registered += result.get() ? 1 : 0;
+        }
+        pool.shutdown();
+        assertEquals(1, registered);
+        assertEquals(1, bookService.getTotalBookCount());
+
+        // Copies saved directly may share an ISBN; deleting one keeps the other findable
+        Book first = new Book("First", "Author", 2020, "978-0-13-468599-1", testStaff.getUsername());
+        Book second = new Book("Second", "Author", 2020, "0134685997", testStaff.getUsername());
+        bookRepository.save(first);
+        bookRepository.save(second);
+        bookRepository.delete(bookService.findByIsbn("9780134685991").orElseThrow().getBookId());
+        assertTrue(bookService.findByIsbn("9780134685991").isPresent());
+    }
+}
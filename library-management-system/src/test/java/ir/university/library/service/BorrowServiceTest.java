@@ -7,7 +7,13 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -155,6 +161,24 @@ class BorrowServiceTest {
         assertEquals(2, requests.size());
     }
 
+    @Test
+    void testGetPendingRequestsForNextDays() {
+        LocalDate today = LocalDate.now();
+        borrowService.createBorrowRequest(
+            testStudent.getUsername(), testBookId, today.plusDays(2), today.plusDays(9)
+        );
+
+        Book book2 = bookService.registerBook("Book 2", "Author 2", 2024,
+                                             "ISBN456", testStaff.getUsername());
+        borrowService.createBorrowRequest(
+            testStudent.getUsername(), book2.getBookId(), today.plusDays(5), today.plusDays(12)
+        );
+
+        assertEquals(1, borrowService.getPendingRequestsForNextDays(3).size());
+        assertEquals(2, borrowService.getPendingRequestsForNextDays(5).size());
+        assertTrue(borrowService.getPendingRequestsForReview().isEmpty());
+    }
+
     @Test
     void testReturnBook() {
         // Create and approve a borrow
@@ -235,4 +259,212 @@ class BorrowServiceTest {
         
         assertEquals(1, borrowService.getTotalRequestCount());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testConcurrentApprovalsLendOneCopyOnce() throws Exception {
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = startDate.plusDays(7);
+        List<BorrowRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Student student = new Student("racer" + i, "pass", "R" + i, "Racer " + i, "r" + i + "@test.com");
+            userRepository.save(student);
+            requests.add(borrowService.createBorrowRequest(student.getUsername(), testBookId, startDate, endDate));
+        }
+        long versionBefore = bookRepository.findById(testBookId).orElseThrow().getVersion();
+
+        List<Callable<Boolean>> approvals = new ArrayList<>();
+        for (BorrowRequest request : requests) {
+            approvals.add(() -> borrowService.approveRequest(request.getRequestId(), testStaff.getUsername()));
+            approvals.add(() -> borrowService.approveRequest(request.getRequestId(), testStaff.getUsername()));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        int successes = 0;
+        try {
+            for (Future<Boolean> result : executor.invokeAll(approvals)) {
+                if (result.get()) {
+                    successes++;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, successes);
+        assertEquals(1, borrowRepository.countActiveRecords());
+        assertEquals(7, borrowRepository.findPendingRequests().size());
+        Book book = bookRepository.findById(testBookId).orElseThrow();
+        assertFalse(book.isAvailable());
+        assertEquals(versionBefore + 1, book.getVersion());
+        assertEquals(1, testStaff.getBooksLent());
+    }
+
+    @Test
+    void testConcurrentReturnsSucceedOnce() throws Exception {
+        LocalDate startDate = LocalDate.now();
+        BorrowRequest request = borrowService.createBorrowRequest(
+            testStudent.getUsername(), testBookId, startDate, startDate.plusDays(7)
+        );
+        borrowService.approveRequest(request.getRequestId(), testStaff.getUsername());
+        String recordId = borrowService.getActiveBorrows().get(0).getRecordId();
+
+        List<Callable<Boolean>> returns = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            returns.add(() -> borrowService.returnBook(recordId, testStaff.getUsername()));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        int successes = 0;
+        try {
+            for (Future<Boolean> result : executor.invokeAll(returns)) {
+                if (result.get()) {
+                    successes++;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, successes);
+        assertEquals(1, testStaff.getBooksReceived());
+        assertTrue(bookRepository.findById(testBookId).orElseThrow().isAvailable());
+    }
+
+    @Test
+    void testApprovalOfLentBookKeepsRequestPending() {
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = startDate.plusDays(7);
+        Student other = new Student("student2", "pass", "S002", "Other Student", "s2@test.com");
+        userRepository.save(other);
+
+        BorrowRequest first = borrowService.createBorrowRequest(
+            testStudent.getUsername(), testBookId, startDate, endDate
+        );
+        BorrowRequest second = borrowService.createBorrowRequest(
+            other.getUsername(), testBookId, startDate, endDate
+        );
+
+        assertTrue(borrowService.approveRequest(first.getRequestId(), testStaff.getUsername()));
+        assertFalse(borrowService.approveRequest(second.getRequestId(), testStaff.getUsername()));
+        assertEquals(BorrowRequest.Status.PENDING, second.getStatus());
+        assertNull(second.getApprovedBy());
+        assertFalse(borrowService.approveRequest(first.getRequestId(), testStaff.getUsername()));
+    }
+
+    @Test
+    void testApproveRequestsInBatch() {
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = startDate.plusDays(7);
+        Book second = bookService.registerBook("Second Book", "Author", 2024, "ISBN456", testStaff.getUsername());
+        Student other = new Student("student2", "pass", "S002", "Other Student", "s2@test.com");
+        userRepository.save(other);
+
+        BorrowRequest first = borrowService.createBorrowRequest(
+            testStudent.getUsername(), testBookId, startDate, endDate
+        );
+        BorrowRequest sameBook = borrowService.createBorrowRequest(
+            other.getUsername(), testBookId, startDate, endDate
+        );
+        BorrowRequest secondBook = borrowService.createBorrowRequest(
+            other.getUsername(), second.getBookId(), startDate, endDate
+        );
+
+        boolean[] results = borrowService.approveRequests(
+            List.of(first.getRequestId(), sameBook.getRequestId(), "missing", secondBook.getRequestId()),
+            testStaff.getUsername()
+        );
+
+        assertArrayEquals(new boolean[]{true, false, false, true}, results);
+        assertEquals(BorrowRequest.Status.PENDING, sameBook.getStatus());
+        assertEquals(2, borrowRepository.countActiveRecords());
+        assertEquals(2, testStaff.getBooksLent());
+        assertFalse(bookRepository.findById(second.getBookId()).orElseThrow().isAvailable());
+    }
+
+    @Test
+    void testReturnBooksInBatch() {
+        LocalDate startDate = LocalDate.now();
+        Book second = bookService.registerBook("Second Book", "Author", 2024, "ISBN456", testStaff.getUsername());
+        List<String> requestIds = List.of(
+            borrowService.createBorrowRequest(testStudent.getUsername(), testBookId,
+                startDate, startDate.plusDays(7)).getRequestId(),
+            borrowService.createBorrowRequest(testStudent.getUsername(), second.getBookId(),
+                startDate, startDate.plusDays(7)).getRequestId()
+        );
+        borrowService.approveRequests(requestIds, testStaff.getUsername());
+
+        List<String> recordIds = new ArrayList<>();
+        for (BorrowRecord record : borrowService.getActiveBorrows()) {
+            recordIds.add(record.getRecordId());
+        }
+        recordIds.add(recordIds.get(0));
+
+        boolean[] results = borrowService.returnBooks(recordIds, testStaff.getUsername());
+
+        assertArrayEquals(new boolean[]{true, true, false}, results);
+        assertEquals(0, borrowRepository.countActiveRecords());
+        assertEquals(2, testStaff.getBooksReceived());
+        assertTrue(bookRepository.findById(testBookId).orElseThrow().isAvailable());
+        assertTrue(bookRepository.findById(second.getBookId()).orElseThrow().isAvailable());
+    }
+
+    @Test
+    void testRequestLentBookForLaterDates() {
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = startDate.plusDays(7);
+        Student other = new Student("student2", "pass", "S002", "Other Student", "s2@test.com");
+        userRepository.save(other);
+
+        BorrowRequest first = borrowService.createBorrowRequest(
+            testStudent.getUsername(), testBookId, startDate, endDate
+        );
+        assertTrue(borrowService.approveRequest(first.getRequestId(), testStaff.getUsername()));
+        assertFalse(bookRepository.findById(testBookId).orElseThrow().isAvailable());
+
+        // Overlapping dates are refused and the next free window is suggested
+        assertThrows(IllegalStateException.class, () ->
+            borrowService.createBorrowRequest(other.getUsername(), testBookId,
+                startDate.plusDays(3), endDate.plusDays(3))
+        );
+        assertEquals(Optional.of(endDate.plusDays(1)),
+            borrowService.findEarliestAvailableStart(testBookId, startDate.plusDays(3), 7));
+
+        BorrowRequest later = borrowService.createBorrowRequest(
+            other.getUsername(), testBookId, endDate.plusDays(1), endDate.plusDays(7)
+        );
+        assertTrue(borrowService.approveRequest(later.getRequestId(), testStaff.getUsername()));
+
+        // Once the first loan is back the book is on the shelf until the later one starts
+        BorrowRecord firstRecord = borrowService.getActiveBorrows().stream()
+            .filter(record -> record.getRequestId().equals(first.getRequestId()))
+            .findFirst().orElseThrow();
+        assertTrue(borrowService.returnBook(firstRecord.getRecordId(), testStaff.getUsername()));
+        assertTrue(bookRepository.findById(testBookId).orElseThrow().isAvailable());
+        assertThrows(IllegalStateException.class, () ->
+            borrowService.createBorrowRequest(testStudent.getUsername(), testBookId,
+                endDate.plusDays(2), endDate.plusDays(4))
+        );
+    }
+
+    @Test
+    void testFutureLoanKeepsBookAvailable() {
+        LocalDate startDate = LocalDate.now().plusDays(10);
+        BorrowRequest request = borrowService.createBorrowRequest(
+            testStudent.getUsername(), testBookId, startDate, startDate.plusDays(7)
+        );
+        assertTrue(borrowService.approveRequest(request.getRequestId(), testStaff.getUsername()));
+        assertTrue(bookRepository.findById(testBookId).orElseThrow().isAvailable());
+
+        // Taking the book out of circulation still blocks new loans
+        bookService.setBookAvailability(testBookId, false);
+        BorrowRequest today = borrowService.createBorrowRequest(
+            testStudent.getUsername(), testBookId, LocalDate.now(), LocalDate.now().plusDays(3)
+        );
+        assertFalse(borrowService.approveRequest(today.getRequestId(), testStaff.getUsername()));
+    }
+
+    @Test
+    void testEarliestStartForBookOutOfCirculation() {
+        bookService.setBookAvailability(testBookId, false);
+        assertTrue(borrowService.findEarliestAvailableStart(testBookId, LocalDate.now(), 7).isEmpty());
+        assertTrue(borrowService.findEarliestAvailableStart("missing", LocalDate.now(), 7).isEmpty());
+    }
+}
@@ -8,7 +8,9 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
 import java.time.LocalDate;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -208,6 +210,33 @@ class ReportServiceTest {
         assertEquals(1, performance.booksReceived, "Should have received 1 book");
     }
 
+    @Test
+    @DisplayName("Staff performance follows deletions and leaves stored counters alone")
+    void testStaffPerformanceIgnoresStoredCounters() {
+        Book kept = bookService.registerBook("Kept", "Author", 2024, "ISBN1", testStaff.getUsername());
+        Book removed = bookService.registerBook("Removed", "Author", 2024, "ISBN2", testStaff.getUsername());
+        bookRepository.delete(removed.getBookId());
+
+        BorrowRequest request = borrowService.createBorrowRequest(
+            testStudent.getUsername(), kept.getBookId(), LocalDate.now(), LocalDate.now().plusDays(7)
+        );
+        borrowService.approveRequest(request.getRequestId(), testStaff.getUsername());
+
+        // Simulate counters that drifted from the records, e.g. after a partial load
+        testStaff.setBooksRegistered(9);
+        testStaff.setBooksLent(0);
+
+        ReportService.StaffPerformance performance = reportService.getStaffPerformance(testStaff.getUsername());
+        assertEquals(1, performance.booksRegistered);
+        assertEquals(1, performance.booksLent);
+        assertEquals(0, performance.booksReceived);
+
+        // A read-only report: the drifted fields are not rewritten
+        Staff stored = (Staff) userRepository.findByUsername(testStaff.getUsername()).orElseThrow();
+        assertEquals(9, stored.getBooksRegistered());
+        assertEquals(0, stored.getBooksLent());
+    }
+
     @Test
     @DisplayName("Get top 10 students with most delays")
     void testGetTop10StudentsWithMostDelays() {
@@ -252,6 +281,37 @@ class ReportServiceTest {
         assertEquals(12, topDelayers.get(0).totalDelayDays);
     }
 
+    @Test
+    @DisplayName("Top-k delay ranking supports any k and tie-breaking")
+    void testTopStudentsWithMostDelaysTieBreaking() {
+        int[] delays = {3, 5, 3, 1};
+        for (int i = 0; i < delays.length; i++) {
+            String username = "student" + (char) ('a' + i);
+            userRepository.save(new Student(username, "pass", "S" + i, "Student " + i, username + "@test.com"));
+            LocalDate startDate = LocalDate.now().minusDays(20);
+            BorrowRecord record = new BorrowRecord("req" + i, username, "book" + i,
+                                                   startDate, startDate.plusDays(7), testStaff.getUsername());
+            record.setActualReturnDate(startDate.plusDays(7 + delays[i]).atStartOfDay());
+            record.setReturned(true);
+            borrowRepository.saveRecord(record);
+        }
+
+        List<ReportService.StudentDelayInfo> top2 = reportService.getTopStudentsWithMostDelays(2);
+        assertEquals(2, top2.size());
+        assertEquals("studentb", top2.get(0).username);
+        assertEquals("studenta", top2.get(1).username);
+
+        List<ReportService.StudentDelayInfo> reversedTies = reportService.getTopStudentsWithMostDelays(
+            3, Comparator.reverseOrder()
+        );
+        assertEquals("studentb", reversedTies.get(0).username);
+        assertEquals("studentc", reversedTies.get(1).username);
+        assertEquals("studenta", reversedTies.get(2).username);
+
+        assertEquals(4, reportService.getTopStudentsWithMostDelays(100).size());
+        assertTrue(reportService.getTopStudentsWithMostDelays(0).isEmpty());
+    }
+
     @Test
     @DisplayName("Get general statistics")
     void testGetGeneralStatistics() {
@@ -284,6 +344,108 @@ class ReportServiceTest {
         assertEquals(2, stats.activeBorrows, "Should have 2 active borrows");
     }
 
+    @Test
+    @DisplayName("Statistics follow edits to an already returned record")
+    void testStatisticsFollowRecordEdits() {
+        Book book = bookService.registerBook("Book 1", "Author 1", 2024, "ISBN1", testStaff.getUsername());
+        LocalDate startDate = LocalDate.now();
+        LocalDate endDate = startDate.plusDays(7);
+
+        BorrowRequest request = borrowService.createBorrowRequest(
+            testStudent.getUsername(), book.getBookId(), startDate, endDate
+        );
+        borrowService.approveRequest(request.getRequestId(), testStaff.getUsername());
+        BorrowRecord record = borrowRepository.findRecordsByStudent(testStudent.getUsername()).get(0);
+        borrowService.returnBook(record.getRecordId(), testStaff.getUsername());
+
+        assertEquals(0, reportService.getStudentStats(testStudent.getUsername()).lateReturns);
+        assertEquals(0.0, reportService.getBorrowStats().avgBorrowDuration, 0.01);
+
+        // Correct the return date afterwards
+        record.setActualReturnDate(endDate.plusDays(4).atStartOfDay());
+        borrowRepository.saveRecord(record);
+
+        ReportService.StudentStats stats = reportService.getStudentStats(testStudent.getUsername());
+        assertEquals(1, stats.totalBorrows);
+        assertEquals(0, stats.notReturned);
+        assertEquals(1, stats.lateReturns);
+        assertEquals(11.0, reportService.getBorrowStats().avgBorrowDuration, 0.01);
+
+        List<ReportService.StudentDelayInfo> delays = reportService.getTop10StudentsWithMostDelays();
+        assertEquals(1, delays.size());
+        assertEquals(4, delays.get(0).totalDelayDays);
+    }
+
+    @Test
+    @DisplayName("Late return statistics include archived records")
+    void testLateReturnStatsAcrossArchive() {
+        LocalDate startDate = LocalDate.now().minusDays(30);
+        LocalDate endDate = startDate.plusDays(7);
+
+        BorrowRecord late = new BorrowRecord("req1", "student1", "book1", startDate, endDate, "staff1");
+        late.setReturned(true);
+        late.setActualReturnDate(endDate.plusDays(5).atStartOfDay());
+        borrowRepository.saveRecord(late);
+        borrowRepository.archiveReturnedRecords();
+
+        BorrowRecord slightlyLate = new BorrowRecord("req2", "student1", "book2", startDate, endDate, "staff1");
+        slightlyLate.setReturned(true);
+        slightlyLate.setActualReturnDate(endDate.plusDays(1).atStartOfDay());
+        BorrowRecord onTime = new BorrowRecord("req3", "student1", "book3", startDate, endDate, "staff1");
+        onTime.setReturned(true);
+        onTime.setActualReturnDate(endDate.atStartOfDay());
+        borrowRepository.saveRecord(slightlyLate);
+        borrowRepository.saveRecord(onTime);
+
+        ReportService.LateReturnStats stats = reportService.getLateReturnStats();
+        assertEquals(3, stats.returnedRecords);
+        assertEquals(2, stats.lateReturns);
+        assertEquals(6, stats.totalDelayDays);
+        assertEquals(5, stats.maxDelayDays);
+        assertEquals(3.0, stats.getAverageDelayDays(), 0.01);
+    }
+
+    @Test
+    @DisplayName("Parallel recomputation matches the running statistics")
+    void testParallelAggregationMatchesRunningStatistics() {
+        LocalDate base = LocalDate.now().minusDays(400);
+        for (int i = 0; i < 3000; i++) {
+            LocalDate start = base.plusDays(i % 300);
+            BorrowRecord record = new BorrowRecord("req" + i, "student" + (i % 37), "book" + (i % 101),
+                                                   start, start.plusDays(14), "staff1");
+            if (i % 10 != 0) {
+                record.setReturned(true);
+                record.setActualReturnDate(start.plusDays(7 + i % 13).atTime(9, 0));
+            }
+            borrowRepository.saveRecord(record);
+            if (i == 1500) {
+                borrowRepository.archiveReturnedRecords();
+            }
+        }
+
+        ReportService.BorrowStats running = reportService.getBorrowStats();
+        ReportService.BorrowStats computed = reportService.computeBorrowStats();
+        assertEquals(running.approvedBorrows, computed.approvedBorrows);
+        assertEquals(running.avgBorrowDuration, computed.avgBorrowDuration, 0.0001);
+
+        Map<String, ReportService.StudentStats> students = reportService.computeStudentStats();
+        assertEquals(37, students.size());
+        for (ReportService.StudentStats stats : students.values()) {
+            ReportService.StudentStats expected = reportService.getStudentStats(stats.username);
+            assertEquals(expected.totalBorrows, stats.totalBorrows);
+            assertEquals(expected.notReturned, stats.notReturned);
+            assertEquals(expected.lateReturns, stats.lateReturns);
+        }
+
+        List<ReportService.StudentDelayInfo> expectedTop = reportService.getTopStudentsWithMostDelays(5);
+        List<ReportService.StudentDelayInfo> computedTop = reportService.computeTopStudentsWithMostDelays(5);
+        assertEquals(expectedTop.size(), computedTop.size());
+        for (int i = 0; i < expectedTop.size(); i++) {
+            assertEquals(expectedTop.get(i).username, computedTop.get(i).username);
+            assertEquals(expectedTop.get(i).totalDelayDays, computedTop.get(i).totalDelayDays);
+        }
+    }
+
     @Test
     @DisplayName("Student report with no borrows")
     void testStudentReportWithNoBorrows() {